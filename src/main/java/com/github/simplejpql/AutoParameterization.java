@@ -0,0 +1,169 @@
+package com.github.simplejpql;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+
+// lifts literals out of expr() predicates into bound parameters, so expressions differing only in their
+// literals render the same statement text. opt-in because some positions only accept literals; function names,
+// escape and trim characters and cast type arguments are recognised and left alone. a string literal lifted from
+// a comparison with an enum path is bound as the enum constant when the query is prepared
+public class AutoParameterization {
+
+	private static final Pattern STRING_LITERAL_ONLY = Pattern.compile("(?is).*(?:\\bescape|\\bfunction\\s*\\(|\\btrim\\s*\\(\\s*(?:(?:leading|trailing|both)\\s*)?)\\s*");
+
+	private static final Pattern NUMBER_LITERAL_ONLY = Pattern.compile("(?is).*\\bas\\s+[\\w.]+\\s*\\(\\s*(?:\\d+\\s*,\\s*)?");
+
+	private static volatile boolean enabled;
+
+	private AutoParameterization() {}
+
+	public static void setEnabled(boolean enabled) {
+		AutoParameterization.enabled = enabled;
+	}
+
+	// a frozen statement renders and binds with the value captured when it was frozen
+	public static boolean isEnabled() {
+		RenderSettings settings = RenderSettings.current();
+		return settings != null ? settings.isAutoParameterization() : enabled;
+	}
+
+	// rewrites numeric, string and {d|t|ts '...'} literals to :parameterName(i), adding their values to values in order
+	static String lift(String expression, IntFunction<String> parameterName, List<Object> values) {
+		StringBuilder lifted = new StringBuilder(expression.length());
+		int length = expression.length();
+
+		for (int i = 0; i < length; i++) {
+			char c = expression.charAt(i);
+			char previous = i > 0 ? expression.charAt(i - 1) : ' ';
+
+			if (c == '{' && i + 1 < length && Character.isLetter(expression.charAt(i + 1))) {
+				int end = expression.indexOf('}', i);
+				Object temporal = end < 0 ? null : parseTemporal(expression.substring(i + 1, end).trim());
+
+				if (temporal != null) {
+					values.add(temporal);
+					lifted.append(':').append(parameterName.apply(values.size()));
+					i = end;
+					continue;
+				}
+			} else if (c == '\'') {
+				StringBuilder literal = new StringBuilder();
+				int end = i + 1;
+
+				for (; end < length; end++) {
+					if (expression.charAt(end) == '\'') {
+						if (end + 1 < length && expression.charAt(end + 1) == '\'')
+							end++;
+						else
+							break;
+					}
+
+					literal.append(expression.charAt(end));
+				}
+
+				// kept whole, so no digit inside it is taken for a number
+				if (end < length && isLiteralOnly(lifted, STRING_LITERAL_ONLY)) {
+					lifted.append(expression, i, end + 1);
+					i = end;
+					continue;
+				}
+
+				if (end < length) {
+					values.add(literal.toString());
+					lifted.append(':').append(parameterName.apply(values.size()));
+					i = end;
+					continue;
+				}
+			} else if (Character.isDigit(c) && !isIdentifierPart(previous) && !isLiteralOnly(lifted, NUMBER_LITERAL_ONLY)) {
+				int end = i;
+
+				while (end < length && (Character.isDigit(expression.charAt(end)) || expression.charAt(end) == '.'))
+					end++;
+
+				int suffix = end;
+
+				while (suffix < length && Character.isLetter(expression.charAt(suffix)))
+					suffix++;
+
+				Object number = parseNumber(expression.substring(i, end), expression.substring(end, suffix));
+
+				if (number != null) {
+					values.add(number);
+					lifted.append(':').append(parameterName.apply(values.size()));
+					i = suffix - 1;
+					continue;
+				}
+			}
+
+			lifted.append(c);
+		}
+
+		return lifted.toString();
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == ':' || c == '.';
+	}
+
+	// whether the literal following preceding is in a position that only takes literals
+	private static boolean isLiteralOnly(StringBuilder preceding, Pattern pattern) {
+		return pattern.matcher(preceding.substring(Math.max(0, preceding.length() - 64))).matches();
+	}
+
+	private static Object parseNumber(String digits, String suffix) {
+		try {
+			switch (suffix.toLowerCase()) {
+				case "":
+					if (digits.indexOf('.') >= 0)
+						return Double.valueOf(digits);
+
+					long value = Long.parseLong(digits);
+					return value == (int) value ? (Object) (int) value : (Object) value;
+				case "l":
+					return Long.valueOf(digits);
+				case "d":
+					return Double.valueOf(digits);
+				case "f":
+					return Float.valueOf(digits);
+				case "bd":
+					return new BigDecimal(digits);
+				case "bi":
+					return new BigInteger(digits);
+				default:
+					return null;
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static Object parseTemporal(String escape) {
+		int quote = escape.indexOf('\'');
+
+		if (quote < 0 || !escape.endsWith("'") || escape.length() - 1 <= quote)
+			return null;
+
+		String type = escape.substring(0, quote).trim().toLowerCase(), value = escape.substring(quote + 1, escape.length() - 1);
+
+		try {
+			switch (type) {
+				case "d":
+					return LocalDate.parse(value);
+				case "t":
+					return LocalTime.parse(value);
+				case "ts":
+					return LocalDateTime.parse(value.replace(' ', 'T'));
+				default:
+					return null;
+			}
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.github.simplejpql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.Query;
+
+public class BatchExecutor {
+
+	private final EntityManagerFactory entityManagerFactory;
+
+	private boolean preserveOrder = true;
+
+	public BatchExecutor(EntityManagerFactory entityManagerFactory) {
+		this.entityManagerFactory = Objects.requireNonNull(entityManagerFactory, "entityManagerFactory must not be null");
+	}
+
+	// when false, statements sharing a JPQL string and settings are grouped even if other statements were submitted in between
+	public BatchExecutor preserveOrder(boolean preserveOrder) {
+		this.preserveOrder = preserveOrder;
+		return this;
+	}
+
+	public int[] execute(List<? extends StatementBuilder<?>> statements) {
+		return Transactions.write(entityManagerFactory, entityManager -> execute(entityManager, statements, preserveOrder));
+	}
+
+	// runs in the caller's transaction; the returned counts are in submission order
+	public static int[] execute(EntityManager entityManager, List<? extends StatementBuilder<?>> statements, boolean preserveOrder) {
+		int[] counts = new int[statements.size()];
+
+		// pending changes are flushed once up front instead of before every bulk statement
+		entityManager.flush();
+
+		for (List<Integer> group : group(statements, preserveOrder)) {
+			StatementBuilder<?> first = statements.get(group.get(0));
+			Query query = entityManager.createQuery(first.toString());
+
+			for (int index : group) {
+				StatementBuilder<?> statement = statements.get(index);
+				query.setFlushMode(FlushModeType.COMMIT);
+				counts[index] = statement.prepareQuery(query).executeUpdate();
+			}
+		}
+
+		return counts;
+	}
+
+	static List<List<Integer>> group(List<? extends StatementBuilder<?>> statements, boolean preserveOrder) {
+		List<List<Integer>> groups = new ArrayList<>();
+		Map<List<Object>, List<Integer>> groupsByStatement = new LinkedHashMap<>();
+		List<Object> previous = null;
+
+		for (int i = 0; i < statements.size(); i++) {
+			List<Object> key = getGroupKey(statements.get(i));
+
+			if (preserveOrder) {
+				if (!key.equals(previous))
+					groups.add(new ArrayList<>());
+
+				groups.get(groups.size() - 1).add(i);
+				previous = key;
+			} else {
+				groupsByStatement.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+			}
+		}
+
+		if (!preserveOrder)
+			groups.addAll(groupsByStatement.values());
+
+		return groups;
+	}
+
+	// a query keeps the hints and lock mode it was first prepared with, so only statements agreeing on them can share it
+	private static List<Object> getGroupKey(StatementBuilder<?> statement) {
+		return Arrays.asList(statement.toString(), statement.getLockMode(), statement.getFlushMode(), new HashMap<>(statement.getHints()));
+	}
+}
@@ -0,0 +1,736 @@
+package com.github.simplejpql;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.LockModeType;
+
+import com.github.simplejpql.StatementBuilder.DeleteStatementBuilder;
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder.FetchStrategy;
+import com.github.simplejpql.StatementBuilder.UpdateStatementBuilder;
+
+// versioned binary form of predicates and statements; parameter prefixes are not part of it, so equal
+// structures with equal values encode, and hash, identically
+public class BinaryCodec {
+
+	static final int VERSION = 1;
+
+	private static final int MAGIC = 0x51;
+
+	private static final int PREDICATE = 'P', SELECT = 'S', UPDATE = 'U', DELETE = 'D';
+
+	static final int NULL = 0, AND = 1, OR = 2, EXPRESSION = 3, NOT = 4, EQUALS = 5, GREATER_THAN = 6, LESS_THAN = 7,
+		IN = 8, EXISTS = 9, IN_SUBQUERY = 10, IS_NULL = 11, LIKE = 12, COLLECTION_SIZE = 13;
+
+	private static final int V_NULL = 0, V_TRUE = 1, V_FALSE = 2, V_INT = 3, V_LONG = 4, V_SHORT = 5, V_BYTE = 6, V_FLOAT = 7,
+		V_DOUBLE = 8, V_BIG_INTEGER = 9, V_BIG_DECIMAL = 10, V_STRING = 11, V_CHAR = 12, V_LOCAL_DATE = 13, V_LOCAL_TIME = 14,
+		V_LOCAL_DATE_TIME = 15, V_INSTANT = 16, V_UUID = 17, V_ENUM = 18, V_COLLECTION = 19;
+
+	private BinaryCodec() {}
+
+	// resolves the given types, and the flush and lock mode enums, by their names
+	public static Function<String, Class<?>> allowing(Class<?>...types) {
+		Map<String, Class<?>> allowed = new LinkedHashMap<>();
+
+		for (Class<?> type : List.of(FlushModeType.class, LockModeType.class))
+			allowed.put(type.getName(), type);
+
+		for (Class<?> type : types)
+			allowed.put(type.getName(), type);
+
+		return allowed::get;
+	}
+
+	// supplier values are resolved at the time of encoding
+	public static byte[] encode(Predicate predicate) {
+		Writer writer = new Writer().header(PREDICATE);
+		writer.writePredicate(predicate);
+		return writer.toByteArray();
+	}
+
+	public static byte[] encode(StatementBuilder<?> statement) {
+		if (statement instanceof SelectStatementBuilder) {
+			Writer writer = new Writer().header(SELECT);
+			writer.writeSelect((SelectStatementBuilder) statement);
+			return writer.toByteArray();
+		}
+
+		if (statement instanceof UpdateStatementBuilder) {
+			UpdateStatementBuilder update = (UpdateStatementBuilder) statement;
+			Writer writer = new Writer().header(UPDATE);
+			writer.writeString(update.getEntityName());
+			writer.writeValueMap(update.getUpdateItems());
+			writer.writePredicate(update.getWhere());
+			writer.writeString(update.getKeyProperty());
+			writer.writeVarInt(update.getKeyedItems().size());
+			update.getKeyedItems().forEach((key, items) -> {
+				writer.writeValue(key);
+				writer.writeValueMap(items);
+			});
+			writer.writeCommon(statement);
+			return writer.toByteArray();
+		}
+
+		DeleteStatementBuilder delete = (DeleteStatementBuilder) statement;
+		Writer writer = new Writer().header(DELETE);
+		writer.writeString(delete.getEntityName());
+		writer.writePredicate(delete.getWhere());
+		writer.writeCommon(statement);
+		return writer.toByteArray();
+	}
+
+	// reads from the buffer's position onwards and leaves it after the encoded form. encoded enum and projection
+	// types are resolved by name through types, which returns null for any it does not allow; the bytes may come
+	// from anywhere, so they never pick the classes that are loaded and instantiated
+	public static Predicate decodePredicate(ByteBuffer buffer, Function<String, Class<?>> types) {
+		Reader reader = new Reader(buffer, types).header(PREDICATE);
+		return reader.readPredicate();
+	}
+
+	// only the jakarta.persistence enums a statement carries itself are resolved
+	public static Predicate decodePredicate(ByteBuffer buffer) {
+		return decodePredicate(buffer, allowing());
+	}
+
+	public static StatementBuilder<?> decodeStatement(ByteBuffer buffer) {
+		return decodeStatement(buffer, allowing());
+	}
+
+	public static StatementBuilder<?> decodeStatement(ByteBuffer buffer, Function<String, Class<?>> types) {
+		Reader reader = new Reader(buffer, types);
+		int kind = reader.header();
+
+		switch (kind) {
+			case SELECT:
+				return reader.readSelect();
+
+			case UPDATE:
+				UpdateStatementBuilder update = StatementBuilder.update(reader.readString()).set(reader.readValueMap()).where(reader.readPredicate());
+				String keyProperty = reader.readString();
+				Map<Object, Map<String, Object>> keyedItems = new LinkedHashMap<>();
+
+				for (int i = reader.readVarInt(); i > 0; i--)
+					keyedItems.put(reader.readValue(), reader.readValueMap());
+
+				if (keyProperty != null)
+					update = update.setByKey(keyProperty, keyedItems);
+
+				return reader.readCommon(update);
+
+			case DELETE:
+				return reader.readCommon(StatementBuilder.delete().from(reader.readString()).where(reader.readPredicate()));
+
+			default:
+				throw new IllegalArgumentException("Not an encoded statement: " + (char) kind);
+		}
+	}
+
+	public static long hash(Predicate predicate) {
+		return hash128(encode(predicate))[0];
+	}
+
+	public static long hash(StatementBuilder<?> statement) {
+		return hash128(encode(statement))[0];
+	}
+
+	// MurmurHash3 x64 128 with a zero seed
+	public static long[] hash128(byte[] bytes) {
+		final long c1 = 0x87c37b91114253d5L, c2 = 0x4cf5ad432745937fL;
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		int blocks = bytes.length / 16;
+		long h1 = 0, h2 = 0;
+
+		for (int i = 0; i < blocks; i++) {
+			long k1 = buffer.getLong(i * 16), k2 = buffer.getLong(i * 16 + 8);
+
+			h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+			h1 = (Long.rotateLeft(h1, 27) + h2) * 5 + 0x52dce729;
+			h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+			h2 = (Long.rotateLeft(h2, 31) + h1) * 5 + 0x38495ab5;
+		}
+
+		long k1 = 0, k2 = 0;
+		int tail = blocks * 16;
+
+		for (int i = bytes.length - 1; i >= tail; i--) {
+			long b = bytes[i] & 0xffL;
+
+			if (i - tail >= 8)
+				k2 |= b << ((i - tail - 8) * 8);
+			else
+				k1 |= b << ((i - tail) * 8);
+		}
+
+		if (k2 != 0)
+			h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+
+		if (k1 != 0)
+			h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+
+		h1 ^= bytes.length;
+		h2 ^= bytes.length;
+		h1 += h2;
+		h2 += h1;
+		h1 = mix(h1);
+		h2 = mix(h2);
+		h1 += h2;
+		h2 += h1;
+
+		return new long[] {h1, h2};
+	}
+
+	private static long mix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	static class Writer {
+
+		private byte[] bytes = new byte[128];
+
+		private int length;
+
+		Writer header(int kind) {
+			writeByte(MAGIC);
+			writeByte(VERSION);
+			writeByte(kind);
+			return this;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, length);
+		}
+
+		void writeByte(int b) {
+			if (length == bytes.length)
+				bytes = Arrays.copyOf(bytes, length << 1);
+
+			bytes[length++] = (byte) b;
+		}
+
+		void writeBoolean(boolean b) {
+			writeByte(b ? 1 : 0);
+		}
+
+		void writeVarInt(int i) {
+			writeVarLong(i & 0xffffffffL);
+		}
+
+		void writeVarLong(long l) {
+			while ((l & ~0x7fL) != 0) {
+				writeByte((int) (l & 0x7f) | 0x80);
+				l >>>= 7;
+			}
+
+			writeByte((int) l);
+		}
+
+		void writeZigZag(long l) {
+			writeVarLong((l << 1) ^ (l >> 63));
+		}
+
+		void writeLong(long l) {
+			for (int i = 0; i < 8; i++)
+				writeByte((int) (l >>> (i * 8)));
+		}
+
+		// a null string is written as length 0, any other as length + 1
+		void writeString(String s) {
+			if (s == null) {
+				writeVarInt(0);
+				return;
+			}
+
+			byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+			writeVarInt(utf8.length + 1);
+
+			for (byte b : utf8)
+				writeByte(b);
+		}
+
+		void writeStrings(Collection<String> strings) {
+			writeVarInt(strings.size());
+			strings.forEach(this::writeString);
+		}
+
+		void writeValueMap(Map<String, ?> map) {
+			writeVarInt(map.size());
+			map.forEach((key, value) -> {
+				writeString(key);
+				writeValue(value);
+			});
+		}
+
+		void writeValue(Object value) {
+			if (value == null) {
+				writeByte(V_NULL);
+			} else if (value instanceof Boolean) {
+				writeByte((Boolean) value ? V_TRUE : V_FALSE);
+			} else if (value instanceof Integer) {
+				writeByte(V_INT);
+				writeZigZag((Integer) value);
+			} else if (value instanceof Long) {
+				writeByte(V_LONG);
+				writeZigZag((Long) value);
+			} else if (value instanceof Short) {
+				writeByte(V_SHORT);
+				writeZigZag((Short) value);
+			} else if (value instanceof Byte) {
+				writeByte(V_BYTE);
+				writeByte((Byte) value);
+			} else if (value instanceof Float) {
+				writeByte(V_FLOAT);
+				writeVarInt(Float.floatToIntBits((Float) value));
+			} else if (value instanceof Double) {
+				writeByte(V_DOUBLE);
+				writeLong(Double.doubleToLongBits((Double) value));
+			} else if (value instanceof BigInteger) {
+				writeByte(V_BIG_INTEGER);
+				writeString(value.toString());
+			} else if (value instanceof BigDecimal) {
+				writeByte(V_BIG_DECIMAL);
+				writeString(value.toString());
+			} else if (value instanceof String) {
+				writeByte(V_STRING);
+				writeString((String) value);
+			} else if (value instanceof Character) {
+				writeByte(V_CHAR);
+				writeVarInt((Character) value);
+			} else if (value instanceof LocalDate) {
+				writeByte(V_LOCAL_DATE);
+				writeZigZag(((LocalDate) value).toEpochDay());
+			} else if (value instanceof LocalTime) {
+				writeByte(V_LOCAL_TIME);
+				writeVarLong(((LocalTime) value).toNanoOfDay());
+			} else if (value instanceof LocalDateTime) {
+				writeByte(V_LOCAL_DATE_TIME);
+				writeZigZag(((LocalDateTime) value).toEpochSecond(ZoneOffset.UTC));
+				writeVarInt(((LocalDateTime) value).getNano());
+			} else if (value instanceof Instant) {
+				writeByte(V_INSTANT);
+				writeZigZag(((Instant) value).getEpochSecond());
+				writeVarInt(((Instant) value).getNano());
+			} else if (value instanceof UUID) {
+				writeByte(V_UUID);
+				writeLong(((UUID) value).getMostSignificantBits());
+				writeLong(((UUID) value).getLeastSignificantBits());
+			} else if (value instanceof Enum) {
+				writeByte(V_ENUM);
+				writeString(((Enum<?>) value).getDeclaringClass().getName());
+				writeString(((Enum<?>) value).name());
+			} else if (value instanceof Collection) {
+				writeByte(V_COLLECTION);
+				writeVarInt(((Collection<?>) value).size());
+				((Collection<?>) value).forEach(this::writeValue);
+			} else {
+				throw new IllegalArgumentException("Values of type " + value.getClass().getName() + " cannot be encoded");
+			}
+		}
+
+		// 0 case sensitive, 1 the default strategy, 2 lower both sides, 3 lower-cased values with optional shadow properties
+		void writeCaseInsensitivity(boolean ignoreCase, CaseInsensitivity caseInsensitivity) {
+			if (caseInsensitivity == null) {
+				writeByte(ignoreCase ? 1 : 0);
+			} else if (!caseInsensitivity.isLowerValue()) {
+				writeByte(2);
+			} else {
+				writeByte(3);
+				writeVarInt(caseInsensitivity.getShadowProperties().size());
+				caseInsensitivity.getShadowProperties().forEach((property, shadowProperty) -> {
+					writeString(property);
+					writeString(shadowProperty);
+				});
+			}
+		}
+
+		void writePredicate(Predicate predicate) {
+			if (predicate == null)
+				writeByte(NULL);
+			else
+				predicate.encode(this);
+		}
+
+		void writePredicates(Collection<Predicate> predicates) {
+			if (predicates == null) {
+				writeVarInt(0);
+				return;
+			}
+
+			writeVarInt(predicates.size());
+			predicates.forEach(this::writePredicate);
+		}
+
+		void writeSelect(SelectStatementBuilder select) {
+			writeStrings(select.getSelect());
+			writeStrings(select.getFrom());
+			writeVarInt(select.getAssociations().size());
+			select.getAssociations().forEach((association, predicate) -> {
+				writeString(association);
+				writePredicate(predicate);
+			});
+			writeStrings(select.getFetchPaths());
+			writeByte(select.getFetchStrategy().ordinal());
+			writeProjection(select.getProjection());
+			writePredicate(select.getWhere());
+			writeStrings(select.getGroupBy());
+			writePredicate(select.getHaving());
+			writeStrings(select.getOrderBy());
+			writeCommon(select);
+		}
+
+		private void writeProjection(Projection<?> projection) {
+			writeString(projection != null ? projection.getType().getName() : null);
+
+			if (projection != null) {
+				writeByte(projection.getMode().ordinal());
+				writeVarInt(projection.getExpressions().size());
+				projection.getExpressions().forEach((property, expression) -> {
+					writeString(property);
+					writeString(expression);
+				});
+			}
+		}
+
+		void writeCommon(StatementBuilder<?> statement) {
+			writeValue(statement.getFirstResult());
+			writeValue(statement.getMaxResults());
+			writeValue(statement.getFlushMode());
+			writeValue(statement.getLockMode());
+			// sorted, so the encoding does not depend on the iteration order of the hints map
+			writeValueMap(new TreeMap<>(statement.getHints()));
+		}
+	}
+
+	static class Reader {
+
+		private final ByteBuffer buffer;
+
+		private final Function<String, Class<?>> types;
+
+		Reader(ByteBuffer buffer, Function<String, Class<?>> types) {
+			this.buffer = buffer;
+			this.types = Objects.requireNonNull(types, "types must not be null");
+		}
+
+		int header() {
+			if ((buffer.get() & 0xff) != MAGIC)
+				throw new IllegalArgumentException("Not an encoded predicate or statement");
+
+			int version = buffer.get() & 0xff;
+
+			if (version != VERSION)
+				throw new IllegalArgumentException("Unsupported encoding version: " + version);
+
+			return buffer.get() & 0xff;
+		}
+
+		Reader header(int kind) {
+			if (header() != kind)
+				throw new IllegalArgumentException("Not an encoded " + (kind == PREDICATE ? "predicate" : "statement"));
+
+			return this;
+		}
+
+		int readByte() {
+			return buffer.get() & 0xff;
+		}
+
+		boolean readBoolean() {
+			return buffer.get() != 0;
+		}
+
+		int readVarInt() {
+			return (int) readVarLong();
+		}
+
+		long readVarLong() {
+			long l = 0;
+
+			for (int shift = 0; ; shift += 7) {
+				int b = readByte();
+				l |= (long) (b & 0x7f) << shift;
+
+				if ((b & 0x80) == 0)
+					return l;
+			}
+		}
+
+		long readZigZag() {
+			long l = readVarLong();
+			return (l >>> 1) ^ -(l & 1);
+		}
+
+		long readLong() {
+			long l = 0;
+
+			for (int i = 0; i < 8; i++)
+				l |= (long) readByte() << (i * 8);
+
+			return l;
+		}
+
+		// heap buffers are decoded in place, without copying the bytes out first
+		String readString() {
+			int length = readVarInt() - 1;
+
+			if (length < 0)
+				return null;
+
+			String s;
+
+			if (buffer.hasArray()) {
+				s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+			} else {
+				byte[] utf8 = new byte[length];
+				buffer.get(buffer.position(), utf8);
+				s = new String(utf8, StandardCharsets.UTF_8);
+			}
+
+			buffer.position(buffer.position() + length);
+			return s;
+		}
+
+		List<String> readStrings() {
+			List<String> strings = new ArrayList<>();
+
+			for (int i = readVarInt(); i > 0; i--)
+				strings.add(readString());
+
+			return strings;
+		}
+
+		Map<String, Object> readValueMap() {
+			Map<String, Object> map = new LinkedHashMap<>();
+
+			for (int i = readVarInt(); i > 0; i--)
+				map.put(readString(), readValue());
+
+			return map;
+		}
+
+		Object readValue() {
+			int tag = readByte();
+
+			switch (tag) {
+				case V_NULL: return null;
+				case V_TRUE: return Boolean.TRUE;
+				case V_FALSE: return Boolean.FALSE;
+				case V_INT: return (int) readZigZag();
+				case V_LONG: return readZigZag();
+				case V_SHORT: return (short) readZigZag();
+				case V_BYTE: return buffer.get();
+				case V_FLOAT: return Float.intBitsToFloat(readVarInt());
+				case V_DOUBLE: return Double.longBitsToDouble(readLong());
+				case V_BIG_INTEGER: return new BigInteger(readString());
+				case V_BIG_DECIMAL: return new BigDecimal(readString());
+				case V_STRING: return readString();
+				case V_CHAR: return (char) readVarInt();
+				case V_LOCAL_DATE: return LocalDate.ofEpochDay(readZigZag());
+				case V_LOCAL_TIME: return LocalTime.ofNanoOfDay(readVarLong());
+				case V_LOCAL_DATE_TIME: return LocalDateTime.ofEpochSecond(readZigZag(), readVarInt(), ZoneOffset.UTC);
+				case V_INSTANT: return Instant.ofEpochSecond(readZigZag(), readVarInt());
+				case V_UUID: return new UUID(readLong(), readLong());
+				case V_ENUM: return readEnum(readString(), readString());
+				case V_COLLECTION:
+					int size = readVarInt();
+					List<Object> values = new ArrayList<>(size);
+
+					for (int i = 0; i < size; i++)
+						values.add(readValue());
+
+					return values;
+				default:
+					throw new IllegalArgumentException("Unknown value tag: " + tag);
+			}
+		}
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private Enum<?> readEnum(String type, String name) {
+			Class<?> enumType = loadClass(type);
+
+			if (!enumType.isEnum())
+				throw new IllegalArgumentException(type + " is not an enum");
+
+			return Enum.valueOf((Class) enumType, name);
+		}
+
+		CaseInsensitivity readCaseInsensitivity(int mode) {
+			switch (mode) {
+				case 2:
+					return CaseInsensitivity.LOWER_BOTH;
+
+				case 3:
+					Map<String, String> shadowProperties = new LinkedHashMap<>();
+
+					for (int i = readVarInt(); i > 0; i--)
+						shadowProperties.put(readString(), readString());
+
+					return shadowProperties.isEmpty() ? CaseInsensitivity.LOWER_COLUMN : CaseInsensitivity.shadow(shadowProperties);
+
+				default:
+					return null;
+			}
+		}
+
+		Predicate readPredicate() {
+			int tag = readByte();
+
+			switch (tag) {
+				case NULL:
+					return null;
+
+				case AND:
+					return new Predicate.And(readPredicates());
+
+				case OR:
+					return new Predicate.Or(readPredicates());
+
+				case EXPRESSION:
+					return new Predicate.Expression(readString());
+
+				case NOT:
+					return new Predicate.Not(readPredicate());
+
+				case EQUALS: {
+					int mode = readByte();
+					boolean ignoreCase = mode == 1;
+					CaseInsensitivity caseInsensitivity = readCaseInsensitivity(mode);
+					String operand = readString();
+					Object value = readValue();
+
+					return caseInsensitivity != null
+						? new Predicate.Equals<>(operand, value, caseInsensitivity)
+						: new Predicate.Equals<>(operand, value, ignoreCase);
+				}
+
+				case GREATER_THAN:
+					return new Predicate.GreaterThan(readString(), readValue(), readBoolean());
+
+				case LESS_THAN:
+					return new Predicate.LessThan(readString(), readValue(), readBoolean());
+
+				case IN:
+					return new Predicate.In(readString(), (Collection<?>) readValue());
+
+				case EXISTS:
+					return new Predicate.Exists(readSelect());
+
+				case IN_SUBQUERY:
+					return new Predicate.InSubquery(readString(), readSelect());
+
+				case IS_NULL:
+					return new Predicate.IsNull(readString());
+
+				case COLLECTION_SIZE:
+					return new Predicate.CollectionSize(readString(), readString(), (int) readZigZag());
+
+				case LIKE: {
+					int mode = readByte();
+					boolean ignoreCase = mode == 1;
+					CaseInsensitivity caseInsensitivity = readCaseInsensitivity(mode);
+					String operand = readString();
+					String pattern = (String) readValue();
+					boolean escaped = readBoolean();
+
+					Predicate.Like like = caseInsensitivity != null
+						? new Predicate.Like(operand, pattern, caseInsensitivity)
+						: new Predicate.Like(operand, pattern, ignoreCase);
+
+					return escaped ? like.escaped() : like;
+				}
+
+				default:
+					throw new IllegalArgumentException("Unknown predicate tag: " + tag);
+			}
+		}
+
+		private List<Predicate> readPredicates() {
+			List<Predicate> predicates = new ArrayList<>();
+
+			for (int i = readVarInt(); i > 0; i--)
+				predicates.add(readPredicate());
+
+			return predicates;
+		}
+
+		SelectStatementBuilder readSelect() {
+			SelectStatementBuilder select = StatementBuilder.select(readStrings()).from(readStrings());
+			Map<String, Predicate> associations = new LinkedHashMap<>();
+
+			for (int i = readVarInt(); i > 0; i--)
+				associations.put(readString(), readPredicate());
+
+			return readCommon(select
+				.associate(associations)
+				.fetch(readStrings())
+				.fetchStrategy(FetchStrategy.values()[readByte()])
+				.project(readProjection())
+				.where(readPredicate())
+				.groupBy(readStrings())
+				.having(readPredicate())
+				.orderBy(readStrings()));
+		}
+
+		private Projection<?> readProjection() {
+			String type = readString();
+
+			if (type == null)
+				return null;
+
+			Projection<?> projection = Projection.of(loadClass(type)).mode(Projection.Mode.values()[readByte()]);
+
+			for (int i = readVarInt(); i > 0; i--)
+				projection.map(readString(), readString());
+
+			return projection;
+		}
+
+		<T extends StatementBuilder<T>> T readCommon(T statement) {
+			Object firstResult = readValue(), maxResults = readValue(), flushMode = readValue(), lockMode = readValue();
+
+			if (firstResult != null)
+				statement = statement.firstResult((Integer) firstResult);
+
+			if (maxResults != null)
+				statement = statement.maxResults((Integer) maxResults);
+
+			return statement
+				.flushMode((FlushModeType) flushMode)
+				.lockMode((LockModeType) lockMode)
+				.hints(readValueMap());
+		}
+
+		private Class<?> loadClass(String name) {
+			Class<?> type = types.apply(name);
+
+			if (type == null)
+				throw new IllegalArgumentException("Type not allowed: " + name);
+
+			return type;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package com.github.simplejpql;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.QueryTimeoutException;
+
+import lombok.Getter;
+
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
+
+// caps how many executions of the same statement shape run at once, so one hot or pathological query
+// cannot take every connection in the pool. the shape is the statement text with its literals replaced
+public class Bulkhead {
+
+	// statements beyond maxFingerprints share this compartment rather than growing the map without bound
+	private static final String OVERFLOW = "";
+
+	private final int maxConcurrent;
+
+	private final Map<String, Integer> limits = new ConcurrentHashMap<>();
+
+	private final Map<String, Statistics> compartments = new ConcurrentHashMap<>();
+
+	private Duration maxWait = Duration.ZERO;
+
+	private int maxFingerprints = 10_000;
+
+	public Bulkhead(int maxConcurrent) {
+		if (maxConcurrent <= 0)
+			throw new IllegalArgumentException("maxConcurrent must be positive");
+
+		this.maxConcurrent = maxConcurrent;
+	}
+
+	// how long an execution beyond the cap queues for a permit; zero fails fast
+	public Bulkhead maxWait(Duration maxWait) {
+		this.maxWait = Objects.requireNonNull(maxWait, "maxWait must not be null");
+		return this;
+	}
+
+	public Bulkhead maxFingerprints(int maxFingerprints) {
+		this.maxFingerprints = maxFingerprints;
+		return this;
+	}
+
+	// a cap of its own for a known expensive statement; applies to compartments created after this call
+	public Bulkhead limit(StatementBuilder<?> statement, int maxConcurrent) {
+		if (maxConcurrent <= 0)
+			throw new IllegalArgumentException("maxConcurrent must be positive");
+
+		limits.put(getFingerprint(statement), maxConcurrent);
+		return this;
+	}
+
+	public static String getFingerprint(StatementBuilder<?> statement) {
+		return PlanCacheAnalyzer.getFingerprint(statement.toString());
+	}
+
+	public <T> List<T> getResultList(EntityManager entityManager, SelectStatementBuilder statement, Class<T> resultClass) {
+		return execute(statement, () -> statement.getResultList(entityManager, resultClass));
+	}
+
+	public int executeUpdate(EntityManager entityManager, StatementBuilder<?> statement) {
+		return execute(statement, () -> statement.createQuery(entityManager).executeUpdate());
+	}
+
+	public <T> T execute(StatementBuilder<?> statement, Supplier<T> work) {
+		Statistics compartment = getCompartment(getFingerprint(statement));
+		compartment.acquire(getWait());
+
+		try {
+			return work.get();
+		} finally {
+			compartment.release();
+		}
+	}
+
+	public Collection<Statistics> getStatistics() {
+		return new ArrayList<>(compartments.values());
+	}
+
+	private Statistics getCompartment(String fingerprint) {
+		Statistics compartment = compartments.get(fingerprint);
+
+		if (compartment != null)
+			return compartment;
+
+		String key = compartments.size() < maxFingerprints ? fingerprint : OVERFLOW;
+		return compartments.computeIfAbsent(key, k -> new Statistics(k, limits.getOrDefault(k, maxConcurrent)));
+	}
+
+	// never queues past the deadline of the calling thread
+	private long getWait() {
+		long wait = maxWait.toNanos();
+		return Deadline.current().map(deadline -> Math.min(wait, deadline.getRemaining().toNanos())).orElse(wait);
+	}
+
+	public static class Statistics {
+
+		@Getter
+		private final String fingerprint;
+
+		@Getter
+		private final int maxConcurrent;
+
+		private final Semaphore permits;
+
+		private final AtomicInteger queued = new AtomicInteger();
+
+		private final AtomicLong executions = new AtomicLong(), rejections = new AtomicLong();
+
+		Statistics(String fingerprint, int maxConcurrent) {
+			this.fingerprint = fingerprint;
+			this.maxConcurrent = maxConcurrent;
+			this.permits = new Semaphore(maxConcurrent, true);
+		}
+
+		public int getActive() {
+			return maxConcurrent - permits.availablePermits();
+		}
+
+		// executions currently waiting for a permit
+		public int getQueueDepth() {
+			return queued.get();
+		}
+
+		public long getExecutions() {
+			return executions.get();
+		}
+
+		public long getRejections() {
+			return rejections.get();
+		}
+
+		void acquire(long waitNanos) {
+			// a plain tryAcquire would barge ahead of executions already queued
+			if (!permits.hasQueuedThreads() && permits.tryAcquire()) {
+				executions.incrementAndGet();
+				return;
+			}
+
+			boolean acquired = false;
+			queued.incrementAndGet();
+
+			try {
+				acquired = waitNanos > 0 && permits.tryAcquire(waitNanos, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				queued.decrementAndGet();
+			}
+
+			if (!acquired) {
+				rejections.incrementAndGet();
+				throw new QueryTimeoutException(String.format("More than %d concurrent executions of statement %s", maxConcurrent, fingerprint));
+			}
+
+			executions.incrementAndGet();
+		}
+
+		void release() {
+			permits.release();
+		}
+	}
+}
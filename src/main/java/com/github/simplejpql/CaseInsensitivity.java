@@ -0,0 +1,75 @@
+package com.github.simplejpql;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+public class CaseInsensitivity {
+
+	// lower(column) = lower(:value)
+	public static final CaseInsensitivity LOWER_BOTH = new CaseInsensitivity(false, Collections.emptyMap());
+
+	// lower(column) = :value, with the value lower-cased in Java so a functional index on lower(column) applies
+	public static final CaseInsensitivity LOWER_COLUMN = new CaseInsensitivity(true, Collections.emptyMap());
+
+	private static volatile CaseInsensitivity defaultCaseInsensitivity = LOWER_BOTH;
+
+	private final boolean lowerValue;
+
+	private final Map<String, String> shadowProperties;
+
+	private CaseInsensitivity(boolean lowerValue, Map<String, String> shadowProperties) {
+		this.lowerValue = lowerValue;
+		this.shadowProperties = shadowProperties;
+	}
+
+	// shadowProperty = :value against a mapped, already normalised property, e.g. "name" -> "nameLower";
+	// keys may be full operands ("p.name") or bare property names, unmapped operands fall back to LOWER_COLUMN
+	public static CaseInsensitivity shadow(Map<String, String> shadowProperties) {
+		return new CaseInsensitivity(true, Collections.unmodifiableMap(new LinkedHashMap<>(shadowProperties)));
+	}
+
+	// a frozen statement renders and binds with the default captured when it was frozen
+	public static CaseInsensitivity getDefault() {
+		RenderSettings settings = RenderSettings.current();
+		return settings != null ? settings.getCaseInsensitivity() : defaultCaseInsensitivity;
+	}
+
+	// applies to every predicate created with ignoreCase = true
+	public static void setDefault(CaseInsensitivity caseInsensitivity) {
+		defaultCaseInsensitivity = Objects.requireNonNull(caseInsensitivity, "caseInsensitivity must not be null");
+	}
+
+	boolean isLowerValue() {
+		return lowerValue;
+	}
+
+	Map<String, String> getShadowProperties() {
+		return shadowProperties;
+	}
+
+	String getOperand(String operand) {
+		String shadowProperty = shadowProperties.get(operand);
+
+		if (shadowProperty != null)
+			return shadowProperty;
+
+		int dot = operand.lastIndexOf('.');
+		shadowProperty = shadowProperties.get(operand.substring(dot + 1));
+
+		if (shadowProperty != null)
+			return operand.substring(0, dot + 1) + shadowProperty;
+
+		return String.format("lower(%s)", operand);
+	}
+
+	String getParameter(String parameterName) {
+		return lowerValue ? ":" + parameterName : String.format("lower(:%s)", parameterName);
+	}
+
+	Object getValue(Object value) {
+		return lowerValue && value instanceof String ? ((String) value).toLowerCase(Locale.ROOT) : value;
+	}
+}
@@ -0,0 +1,146 @@
+package com.github.simplejpql;
+
+import static com.github.simplejpql.Operator.and;
+import static com.github.simplejpql.Operator.gt;
+import static com.github.simplejpql.Operator.in;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import com.github.simplejpql.StatementBuilder.DeleteStatementBuilder;
+import com.github.simplejpql.StatementBuilder.UpdateStatementBuilder;
+
+import lombok.Getter;
+
+public class ChunkedExecutor {
+
+	private final EntityManagerFactory entityManagerFactory;
+
+	private int chunkSize = 1000;
+
+	private Duration pause = Duration.ZERO;
+
+	private String idProperty = "id";
+
+	private Object resumeAfter;
+
+	private Consumer<Progress> progressListener = progress -> {};
+
+	public ChunkedExecutor(EntityManagerFactory entityManagerFactory) {
+		this.entityManagerFactory = Objects.requireNonNull(entityManagerFactory, "entityManagerFactory must not be null");
+	}
+
+	public ChunkedExecutor chunkSize(int chunkSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("chunkSize must be positive");
+
+		this.chunkSize = chunkSize;
+		return this;
+	}
+
+	public ChunkedExecutor pause(Duration pause) {
+		this.pause = pause;
+		return this;
+	}
+
+	public ChunkedExecutor idProperty(String idProperty) {
+		this.idProperty = idProperty;
+		return this;
+	}
+
+	// continue a previously interrupted run from the last id it reported
+	public ChunkedExecutor resumeAfter(Object resumeAfter) {
+		this.resumeAfter = resumeAfter;
+		return this;
+	}
+
+	public ChunkedExecutor onProgress(Consumer<Progress> progressListener) {
+		this.progressListener = progressListener;
+		return this;
+	}
+
+	public Progress execute(DeleteStatementBuilder statement) {
+		return execute(statement.getEntityName(), statement.getWhere(), ids -> StatementBuilder
+			.delete()
+			.from(statement.getEntityName())
+			.where(in(getIdPath(statement.getEntityName()), ids))
+			.hints(statement.getHints()));
+	}
+
+	public Progress execute(UpdateStatementBuilder statement) {
+		return execute(statement.getEntityName(), statement.getWhere(), ids -> StatementBuilder
+			.update(statement.getEntityName())
+			.set(statement.getUpdateItems())
+			.where(in(getIdPath(statement.getEntityName()), ids))
+			.hints(statement.getHints()));
+	}
+
+	private String getIdPath(String entityName) {
+		String[] tokens = entityName.trim().split("\\s+");
+		return tokens.length > 1 ? tokens[tokens.length - 1] + "." + idProperty : idProperty;
+	}
+
+	private Progress execute(String entityName, Predicate where, Function<List<Object>, StatementBuilder<?>> chunk) {
+		String id = getIdPath(entityName);
+		Progress progress = new Progress(resumeAfter);
+
+		while (!Thread.currentThread().isInterrupted()) {
+			// ids are walked in order so rows an update leaves matching the predicate are not visited twice
+			int affected = Transactions.write(entityManagerFactory, entityManager -> {
+				List<Object> ids = StatementBuilder
+					.select(id)
+					.from(entityName)
+					.where(and(where, progress.lastId != null ? gt(id, progress.lastId) : null))
+					.orderBy(id)
+					.maxResults(chunkSize)
+					.createQuery(entityManager, Object.class)
+					.getResultList();
+
+				if (ids.isEmpty())
+					return -1;
+
+				progress.lastId = ids.get(ids.size() - 1);
+				return chunk.apply(ids).createQuery(entityManager).executeUpdate();
+			});
+
+			if (affected < 0)
+				break;
+
+			progress.chunks++;
+			progress.rows += affected;
+			progressListener.accept(progress);
+
+			if (!pause.isZero() && !pause.isNegative()) {
+				try {
+					Thread.sleep(pause.toMillis());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		progress.completed = !Thread.currentThread().isInterrupted();
+		return progress;
+	}
+
+	@Getter
+	public static class Progress {
+
+		private Object lastId;
+
+		private int chunks;
+
+		private long rows;
+
+		private boolean completed;
+
+		Progress(Object lastId) {
+			this.lastId = lastId;
+		}
+	}
+}
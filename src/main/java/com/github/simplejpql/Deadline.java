@@ -0,0 +1,81 @@
+package com.github.simplejpql;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import jakarta.persistence.QueryTimeoutException;
+
+public class Deadline implements AutoCloseable {
+
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+	private final long expiresAt;
+
+	private final Deadline previous;
+
+	private Deadline(long expiresAt, Deadline previous) {
+		this.expiresAt = expiresAt;
+		this.previous = previous;
+	}
+
+	// opens a scope on the current thread; a nested scope never extends the enclosing deadline
+	public static Deadline after(Duration budget) {
+		Deadline previous = CURRENT.get();
+		long expiresAt = System.nanoTime() + budget.toNanos();
+
+		if (previous != null && previous.expiresAt - expiresAt < 0)
+			expiresAt = previous.expiresAt;
+
+		Deadline deadline = new Deadline(expiresAt, previous);
+		CURRENT.set(deadline);
+		return deadline;
+	}
+
+	public static <T> T call(Duration budget, Supplier<T> work) {
+		Deadline deadline = after(budget);
+
+		try {
+			return work.get();
+		} finally {
+			deadline.close();
+		}
+	}
+
+	public static Optional<Deadline> current() {
+		return Optional.ofNullable(CURRENT.get());
+	}
+
+	public Duration getRemaining() {
+		return Duration.ofNanos(Math.max(0, expiresAt - System.nanoTime()));
+	}
+
+	public boolean isExpired() {
+		return expiresAt - System.nanoTime() <= 0;
+	}
+
+	// the query timeout hint for a statement, capped by the statement's own timeout when it has one. providers apply
+	// it in whole seconds, and Hibernate rounds to the nearest one, where 0 means no timeout at all; rounding up keeps
+	// a budget of less than half a second a timeout, at the cost of the query overrunning it by under a second
+	int getQueryTimeout(Integer queryTimeout) {
+		if (Thread.currentThread().isInterrupted())
+			throw new QueryTimeoutException("Thread was interrupted before the query was executed");
+
+		long remaining = TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime());
+
+		if (remaining <= 0)
+			throw new QueryTimeoutException("Deadline expired before the query was executed");
+
+		long timeout = Math.min(remaining, queryTimeout != null ? queryTimeout : Integer.MAX_VALUE);
+		return (int) Math.min(Integer.MAX_VALUE, (timeout + 999) / 1000 * 1000);
+	}
+
+	@Override
+	public void close() {
+		if (previous != null)
+			CURRENT.set(previous);
+		else
+			CURRENT.remove();
+	}
+}
@@ -0,0 +1,399 @@
+package com.github.simplejpql;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+// parses filters such as  name ~ 'A%' and createdOn > 2024-01-01 and status in (1, 2, 3)  into predicates.
+// operators are = != > >= < <= ~ (like) ~* (like, ignoring case) in, not in, is null and is not null,
+// combined with and, or, not and parentheses. only allowed properties can be referenced
+public class FilterParser {
+
+	private static final Set<Class<?>> TYPES = Set.of(String.class, Integer.class, Long.class, Boolean.class, Double.class,
+		BigDecimal.class, LocalDate.class, LocalDateTime.class, Instant.class, UUID.class);
+
+	private final Map<String, Property> properties = new HashMap<>();
+
+	private int maxDepth = 16;
+
+	private int maxInSize = 100;
+
+	private int maxPatternLength = 100;
+
+	private int maxLength = 4096;
+
+	public FilterParser allow(String name, String path, Class<?> type) {
+		if (!TYPES.contains(Objects.requireNonNull(type, "type must not be null")) && !type.isEnum())
+			throw new IllegalArgumentException("Unsupported property type: " + type.getName());
+
+		properties.put(name, new Property(path, type));
+		return this;
+	}
+
+	public FilterParser allow(String name, Class<?> type) {
+		return allow(name, name, type);
+	}
+
+	public FilterParser maxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	public FilterParser maxInSize(int maxInSize) {
+		this.maxInSize = maxInSize;
+		return this;
+	}
+
+	public FilterParser maxPatternLength(int maxPatternLength) {
+		this.maxPatternLength = maxPatternLength;
+		return this;
+	}
+
+	public FilterParser maxLength(int maxLength) {
+		this.maxLength = maxLength;
+		return this;
+	}
+
+	// null for a blank filter
+	public Predicate parse(CharSequence filter) {
+		if (filter == null)
+			return null;
+
+		if (filter.length() > maxLength)
+			throw new IllegalArgumentException(String.format("Filter is longer than %d characters", maxLength));
+
+		Cursor cursor = new Cursor(filter);
+
+		if (cursor.skipWhitespace() == filter.length())
+			return null;
+
+		Predicate predicate = cursor.parseOr(0);
+
+		if (cursor.skipWhitespace() < filter.length())
+			throw cursor.error("Unexpected input");
+
+		return predicate;
+	}
+
+	private static class Property {
+
+		private final String path;
+
+		private final Class<?> type;
+
+		Property(String path, Class<?> type) {
+			this.path = path;
+			this.type = type;
+		}
+	}
+
+	private class Cursor {
+
+		private final CharSequence input;
+
+		private int position;
+
+		Cursor(CharSequence input) {
+			this.input = input;
+		}
+
+		IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(String.format("%s at position %d", message, position));
+		}
+
+		int skipWhitespace() {
+			while (position < input.length() && Character.isWhitespace(input.charAt(position)))
+				position++;
+
+			return position;
+		}
+
+		private boolean peek(char c) {
+			return skipWhitespace() < input.length() && input.charAt(position) == c;
+		}
+
+		private boolean accept(char c) {
+			if (!peek(c))
+				return false;
+
+			position++;
+			return true;
+		}
+
+		private void expect(char c) {
+			if (!accept(c))
+				throw error("Expected '" + c + "'");
+		}
+
+		// a keyword only matches as a whole word, case insensitively
+		private boolean acceptKeyword(String keyword) {
+			int start = skipWhitespace(), end = start + keyword.length();
+
+			if (end > input.length() || (end < input.length() && isIdentifierPart(input.charAt(end))))
+				return false;
+
+			for (int i = 0; i < keyword.length(); i++)
+				if (Character.toLowerCase(input.charAt(start + i)) != keyword.charAt(i))
+					return false;
+
+			position = end;
+			return true;
+		}
+
+		private boolean isIdentifierPart(char c) {
+			return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+		}
+
+		Predicate parseOr(int depth) {
+			Predicate first = parseAnd(depth);
+
+			if (!acceptKeyword("or"))
+				return first;
+
+			List<Predicate> predicates = new ArrayList<>();
+			predicates.add(first);
+
+			do {
+				predicates.add(parseAnd(depth));
+			} while (acceptKeyword("or"));
+
+			return Operator.or(predicates);
+		}
+
+		private Predicate parseAnd(int depth) {
+			Predicate first = parseUnary(depth);
+
+			if (!acceptKeyword("and"))
+				return first;
+
+			List<Predicate> predicates = new ArrayList<>();
+			predicates.add(first);
+
+			do {
+				predicates.add(parseUnary(depth));
+			} while (acceptKeyword("and"));
+
+			return Operator.and(predicates);
+		}
+
+		private Predicate parseUnary(int depth) {
+			if (depth >= maxDepth)
+				throw error(String.format("Filter is nested deeper than %d levels", maxDepth));
+
+			if (acceptKeyword("not"))
+				return Operator.not(parseUnary(depth + 1));
+
+			if (accept('(')) {
+				Predicate predicate = parseOr(depth + 1);
+				expect(')');
+				return predicate;
+			}
+
+			return parseComparison();
+		}
+
+		private Predicate parseComparison() {
+			int start = skipWhitespace();
+
+			while (position < input.length() && isIdentifierPart(input.charAt(position)))
+				position++;
+
+			if (position == start)
+				throw error("Expected a property");
+
+			String name = input.subSequence(start, position).toString();
+			Property property = properties.get(name);
+
+			if (property == null) {
+				position = start;
+				throw error("Unknown property '" + name + "'");
+			}
+
+			if (acceptKeyword("is")) {
+				boolean not = acceptKeyword("not");
+
+				if (!acceptKeyword("null"))
+					throw error("Expected null");
+
+				return not ? Operator.isNotNull(property.path) : Operator.isNull(property.path);
+			}
+
+			if (acceptKeyword("in"))
+				return Operator.in(property.path, parseValues(property));
+
+			if (acceptKeyword("not")) {
+				if (!acceptKeyword("in"))
+					throw error("Expected in");
+
+				return Operator.notIn(property.path, parseValues(property));
+			}
+
+			skipWhitespace();
+
+			if (position >= input.length())
+				throw error("Expected an operator");
+
+			char c = input.charAt(position++);
+			boolean equals = position < input.length() && input.charAt(position) == '=';
+
+			switch (c) {
+				case '=':
+					return Operator.eq(property.path, parseValue(property));
+
+				case '!':
+					if (!equals)
+						throw error("Expected '='");
+
+					position++;
+					return Operator.neq(property.path, parseValue(property));
+
+				case '>':
+					position += equals ? 1 : 0;
+					return equals ? Operator.gte(property.path, parseValue(property)) : Operator.gt(property.path, parseValue(property));
+
+				case '<':
+					position += equals ? 1 : 0;
+					return equals ? Operator.lte(property.path, parseValue(property)) : Operator.lt(property.path, parseValue(property));
+
+				case '~':
+					boolean ignoreCase = position < input.length() && input.charAt(position) == '*';
+					position += ignoreCase ? 1 : 0;
+
+					if (property.type != String.class)
+						throw error("Patterns only apply to text properties");
+
+					String pattern = (String) parseValue(property);
+
+					if (pattern.length() > maxPatternLength)
+						throw error(String.format("Pattern is longer than %d characters", maxPatternLength));
+
+					return Operator.like(property.path, pattern, ignoreCase);
+
+				default:
+					position--;
+					throw error("Expected an operator");
+			}
+		}
+
+		private List<Object> parseValues(Property property) {
+			List<Object> values = new ArrayList<>();
+			expect('(');
+
+			do {
+				if (values.size() == maxInSize)
+					throw error(String.format("In list has more than %d values", maxInSize));
+
+				values.add(parseValue(property));
+			} while (accept(','));
+
+			expect(')');
+			return values;
+		}
+
+		private Object parseValue(Property property) {
+			int start = skipWhitespace();
+
+			if (accept('\'')) {
+				StringBuilder quoted = new StringBuilder();
+
+				while (true) {
+					if (position >= input.length()) {
+						position = start;
+						throw error("Unterminated string");
+					}
+
+					char c = input.charAt(position++);
+
+					if (c == '\'') {
+						if (position < input.length() && input.charAt(position) == '\'')
+							position++;
+						else
+							break;
+					}
+
+					quoted.append(c);
+				}
+
+				return coerce(property, quoted, 0, quoted.length(), start);
+			}
+
+			while (position < input.length()) {
+				char c = input.charAt(position);
+
+				if (Character.isWhitespace(c) || c == ')' || c == ',')
+					break;
+
+				position++;
+			}
+
+			if (position == start)
+				throw error("Expected a value");
+
+			return coerce(property, input, start, position, start);
+		}
+
+		private Object coerce(Property property, CharSequence text, int start, int end, int position) {
+			Class<?> type = property.type;
+
+			try {
+				if (type == String.class)
+					return text.subSequence(start, end).toString();
+
+				if (type == Integer.class)
+					return Integer.parseInt(text, start, end, 10);
+
+				if (type == Long.class)
+					return Long.parseLong(text, start, end, 10);
+
+				if (type == Boolean.class) {
+					String value = text.subSequence(start, end).toString();
+
+					if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false"))
+						return Boolean.valueOf(value);
+
+					throw new IllegalArgumentException("Invalid boolean");
+				}
+
+				if (type == Double.class)
+					return Double.parseDouble(text.subSequence(start, end).toString());
+
+				if (type == BigDecimal.class)
+					return new BigDecimal(text.subSequence(start, end).toString());
+
+				if (type == LocalDate.class)
+					return LocalDate.parse(text.subSequence(start, end));
+
+				// a date on its own means the start of that day
+				if (type == LocalDateTime.class)
+					return end - start == 10
+						? LocalDate.parse(text.subSequence(start, end)).atStartOfDay()
+						: LocalDateTime.parse(text.subSequence(start, end));
+
+				if (type == Instant.class)
+					return Instant.parse(text.subSequence(start, end));
+
+				if (type == UUID.class)
+					return UUID.fromString(text.subSequence(start, end).toString());
+
+				if (type.isEnum())
+					for (Object constant : type.getEnumConstants())
+						if (((Enum<?>) constant).name().contentEquals(text.subSequence(start, end)))
+							return constant;
+			} catch (DateTimeParseException | IllegalArgumentException e) {
+				// reported below with the position of the value
+			}
+
+			this.position = position;
+			throw error(String.format("Invalid %s value", type.getSimpleName()));
+		}
+	}
+}
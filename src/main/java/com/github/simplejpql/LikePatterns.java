@@ -0,0 +1,174 @@
+package com.github.simplejpql;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
+
+public class LikePatterns {
+
+	public enum Shape {
+		EXACT,
+		PREFIX,
+		LEADING_WILDCARD,
+		OTHER
+	}
+
+	public enum LeadingWildcardPolicy {
+		ALLOW,
+		WARN,
+		REJECT
+	}
+
+	// not a backslash, which MySQL and MariaDB read as escaping the closing quote of escape '\\'
+	public static final char ESCAPE = '!';
+
+	private static volatile boolean prefixRangeRewrite;
+
+	private static volatile LeadingWildcardPolicy leadingWildcardPolicy = LeadingWildcardPolicy.ALLOW;
+
+	private static volatile Set<String> largeEntities = Set.of();
+
+	private static volatile Consumer<String> warningListener = Logger.getLogger(LikePatterns.class.getName())::warning;
+
+	private LikePatterns() {}
+
+	// only equivalent to like under a binary collation, hence opt-in
+	public static void setPrefixRangeRewrite(boolean prefixRangeRewrite) {
+		LikePatterns.prefixRangeRewrite = prefixRangeRewrite;
+	}
+
+	// a frozen statement renders and binds with the value captured when it was frozen
+	public static boolean isPrefixRangeRewrite() {
+		RenderSettings settings = RenderSettings.current();
+		return settings != null ? settings.isPrefixRangeRewrite() : prefixRangeRewrite;
+	}
+
+	public static void setLeadingWildcardPolicy(LeadingWildcardPolicy policy, Collection<String> largeEntities) {
+		LikePatterns.leadingWildcardPolicy = Objects.requireNonNull(policy, "policy must not be null");
+		LikePatterns.largeEntities = Set.copyOf(largeEntities);
+	}
+
+	public static void setWarningListener(Consumer<String> warningListener) {
+		LikePatterns.warningListener = Objects.requireNonNull(warningListener, "warningListener must not be null");
+	}
+
+	public static String escape(String literal) {
+		StringBuilder escaped = new StringBuilder(literal.length() + 8);
+
+		for (int i = 0; i < literal.length(); i++) {
+			char c = literal.charAt(i);
+
+			if (c == ESCAPE || c == '%' || c == '_')
+				escaped.append(ESCAPE);
+
+			escaped.append(c);
+		}
+
+		return escaped.toString();
+	}
+
+	public static Shape getShape(String pattern, boolean escaped) {
+		int wildcards = 0, first = -1;
+		boolean trailingPercent = false;
+
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+
+			if (escaped && c == ESCAPE) {
+				i++;
+				trailingPercent = false;
+			} else if (c == '%' || c == '_') {
+				if (first < 0)
+					first = i;
+
+				wildcards++;
+				trailingPercent = c == '%' && i == pattern.length() - 1;
+			} else {
+				trailingPercent = false;
+			}
+		}
+
+		if (wildcards == 0)
+			return Shape.EXACT;
+
+		if (first == 0)
+			return Shape.LEADING_WILDCARD;
+
+		return wildcards == 1 && trailingPercent ? Shape.PREFIX : Shape.OTHER;
+	}
+
+	// the literal text before the first wildcard, with escapes removed
+	public static String getPrefix(String pattern, boolean escaped) {
+		StringBuilder prefix = new StringBuilder(pattern.length());
+
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+
+			if (escaped && c == ESCAPE && i + 1 < pattern.length())
+				prefix.append(pattern.charAt(++i));
+			else if (c == '%' || c == '_')
+				break;
+			else
+				prefix.append(c);
+		}
+
+		return prefix.toString();
+	}
+
+	// the smallest string greater than every string starting with prefix, or null if there is none
+	public static String getUpperBound(String prefix) {
+		for (int i = prefix.length() - 1; i >= 0; i--) {
+			char c = prefix.charAt(i);
+
+			if (c != Character.MAX_VALUE)
+				return prefix.substring(0, i) + (char) (c + 1);
+		}
+
+		return null;
+	}
+
+	static void check(SelectStatementBuilder statement) {
+		if (leadingWildcardPolicy == LeadingWildcardPolicy.ALLOW || largeEntities.isEmpty())
+			return;
+
+		Map<String, String> entitiesByAlias = new HashMap<>();
+		String defaultEntity = null;
+
+		for (String from : statement.getFrom()) {
+			String[] tokens = from.trim().split("\\s+");
+			String entity = tokens[0].substring(tokens[0].lastIndexOf('.') + 1);
+			entitiesByAlias.put(tokens[tokens.length - 1], entity);
+			defaultEntity = defaultEntity == null ? entity : defaultEntity;
+		}
+
+		String fallback = defaultEntity;
+
+		Stream.concat(statement.getAssociations().values().stream(), Stream.of(statement.getWhere(), statement.getHaving()))
+			.filter(Objects::nonNull)
+			.flatMap(Predicate::flatten)
+			.filter(Predicate.Like.class::isInstance)
+			.map(Predicate.Like.class::cast)
+			.filter(like -> like.getShape() == Shape.LEADING_WILDCARD)
+			.forEach(like -> {
+				int dot = like.getOperand().indexOf('.');
+				String entity = dot < 0 ? fallback : entitiesByAlias.get(like.getOperand().substring(0, dot));
+
+				if (entity == null || !largeEntities.contains(entity))
+					return;
+
+				String message = String.format("Leading wildcard pattern on %s (%s) cannot use an index", like.getOperand(), entity);
+
+				if (leadingWildcardPolicy == LeadingWildcardPolicy.REJECT)
+					throw new IllegalArgumentException(message);
+
+				warningListener.accept(message);
+			});
+	}
+}
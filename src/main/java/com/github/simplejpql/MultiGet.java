@@ -0,0 +1,145 @@
+package com.github.simplejpql;
+
+import static com.github.simplejpql.Operator.in;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceUnitUtil;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
+
+import org.apache.commons.lang3.ClassUtils;
+
+public class MultiGet<T> {
+
+	// also bounds the id lists of other queries by key, e.g. the follow-up queries of split fetches
+	static final int DEFAULT_CHUNK_SIZE = 256;
+
+	private final Class<T> entityClass;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private Map<String, Object> hints = new HashMap<>();
+
+	private MultiGet(Class<T> entityClass) {
+		this.entityClass = entityClass;
+	}
+
+	public static <T> MultiGet<T> of(Class<T> entityClass) {
+		return new MultiGet<>(Objects.requireNonNull(entityClass, "entityClass must not be null"));
+	}
+
+	public MultiGet<T> chunkSize(int chunkSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("chunkSize must be positive");
+
+		this.chunkSize = chunkSize;
+		return this;
+	}
+
+	public MultiGet<T> hints(Map<String, Object> hints) {
+		this.hints.putAll(hints);
+		return this;
+	}
+
+	public List<T> getResultList(EntityManager entityManager, Object...ids) {
+		return getResultList(entityManager, Arrays.asList(ids));
+	}
+
+	// one entry per id in the caller's order, null where no entity exists. entities already managed by the
+	// entity manager come back as the managed instances, since the provider resolves query rows against the
+	// persistence context; probing it with getReference first would leave proxies behind for unknown ids
+	public List<T> getResultList(EntityManager entityManager, List<?> ids) {
+		PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+		SingularAttribute<? super T, ?> idAttribute = getIdAttribute(entityManager);
+		Class<?> idType = ClassUtils.primitiveToWrapper(idAttribute.getJavaType());
+
+		// the identifiers the provider returns are of the id type, so the lookup below only finds ids converted to it
+		List<Object> keys = new ArrayList<>(ids.size());
+		ids.forEach(id -> keys.add(id != null ? toIdType(id, idType) : null));
+
+		Map<Object, T> found = new HashMap<>();
+		Set<Object> distinct = new LinkedHashSet<>(keys);
+		distinct.remove(null);
+
+		if (!distinct.isEmpty()) {
+			String idPath = "e." + idAttribute.getName();
+			List<Object> remaining = new ArrayList<>(distinct);
+
+			for (int i = 0; i < remaining.size(); i += chunkSize) {
+				StatementBuilder
+					.select("e")
+					.from(entityClass, "e")
+					.where(in(idPath, getPaddedChunk(remaining.subList(i, Math.min(i + chunkSize, remaining.size())), chunkSize)))
+					.hints(hints)
+					.createQuery(entityManager, entityClass)
+					.getResultList()
+					.forEach(entity -> found.put(persistenceUnitUtil.getIdentifier(entity), entity));
+			}
+		}
+
+		List<T> results = new ArrayList<>(keys.size());
+		keys.forEach(key -> results.add(key != null ? found.get(key) : null));
+		return results;
+	}
+
+	private SingularAttribute<? super T, ?> getIdAttribute(EntityManager entityManager) {
+		EntityType<T> entityType = entityManager.getMetamodel().entity(entityClass);
+		return entityType.getId(entityType.getIdType().getJavaType());
+	}
+
+	// integral ids of another numeric type are converted when they fit, e.g. an Integer for a Long id
+	static Object toIdType(Object id, Class<?> idType) {
+		if (idType.isInstance(id))
+			return id;
+
+		if (id instanceof Number && (id instanceof BigInteger || id instanceof BigDecimal || ClassUtils.isPrimitiveWrapper(id.getClass()))) {
+			try {
+				BigDecimal value = new BigDecimal(id.toString());
+
+				if (idType == Long.class)
+					return value.longValueExact();
+				if (idType == Integer.class)
+					return value.intValueExact();
+				if (idType == Short.class)
+					return value.shortValueExact();
+				if (idType == BigInteger.class)
+					return value.toBigIntegerExact();
+				if (idType == BigDecimal.class)
+					return value;
+			} catch (ArithmeticException e) {
+				throw new IllegalArgumentException(String.format("%s does not fit an id of type %s", id, idType.getName()), e);
+			}
+		}
+
+		throw new IllegalArgumentException(String.format("%s is not an id of type %s", id, idType.getName()));
+	}
+
+	// pads to the next power of two, but no further than chunkSize, by repeating the last id, so the statement
+	// only ever sees a handful of in list sizes
+	static List<Object> getPaddedChunk(List<Object> chunk, int chunkSize) {
+		int size = Integer.highestOneBit(chunk.size());
+
+		if (size == chunk.size())
+			return chunk;
+
+		int paddedSize = Math.min(size << 1, Math.max(chunkSize, chunk.size()));
+		List<Object> padded = new ArrayList<>(chunk);
+		Object last = chunk.get(chunk.size() - 1);
+
+		while (padded.size() < paddedSize)
+			padded.add(last);
+
+		return padded;
+	}
+}
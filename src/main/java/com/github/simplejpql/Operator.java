@@ -8,6 +8,8 @@ import java.util.List;
 import java.util.Objects;
 import java.util.function.Supplier;
 
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
+
 public class Operator {
 
 	private Operator() {}
@@ -59,6 +61,13 @@ public class Operator {
 		return new Predicate.Equals<>(operand, value, ignoreCase);
 	}
 	
+	public static Predicate eq(String operand, Object value, CaseInsensitivity caseInsensitivity) {
+		if (value == null)
+			return isNull(operand);
+		
+		return new Predicate.Equals<>(operand, value, caseInsensitivity);
+	}
+	
 	public static Predicate eq(String operand, Object value) {
 		return eq(operand, value, false);
 	}
@@ -131,6 +140,22 @@ public class Operator {
 		return not(in(property, values));
 	}
 	
+	public static Predicate in(String property, SelectStatementBuilder subquery) {
+		return new Predicate.InSubquery(property, subquery);
+	}
+
+	public static Predicate notIn(String property, SelectStatementBuilder subquery) {
+		return not(in(property, subquery));
+	}
+	
+	public static Predicate exists(SelectStatementBuilder subquery) {
+		return new Predicate.Exists(subquery);
+	}
+
+	public static Predicate notExists(SelectStatementBuilder subquery) {
+		return not(exists(subquery));
+	}
+	
 	public static Predicate isNull(String property) {
 		return new Predicate.IsNull(property);
 	}
@@ -143,12 +168,45 @@ public class Operator {
 		return new Predicate.Like(operand, pattern, ignoreCase);
 	}
 	
+	public static Predicate like(String operand, String pattern, CaseInsensitivity caseInsensitivity) {
+		return new Predicate.Like(operand, pattern, caseInsensitivity);
+	}
+	
+	// case sensitive, as this form has always rendered, so an index on the column stays usable
 	public static Predicate like(String operand, String pattern) {
-		return like(operand, pattern, true);
+		return like(operand, pattern, false);
 	}
 	
 	public static Predicate contains(String propertyName, String value, boolean ignoreCase) {
-		return like(propertyName, "%" + value + "%", ignoreCase);
+		return new Predicate.Like(propertyName, "%" + LikePatterns.escape(value) + "%", ignoreCase).escaped();
+	}
+	
+	public static Predicate contains(String propertyName, String value, CaseInsensitivity caseInsensitivity) {
+		return new Predicate.Like(propertyName, "%" + LikePatterns.escape(value) + "%", caseInsensitivity).escaped();
+	}
+	
+	public static Predicate startsWith(String propertyName, String value, boolean ignoreCase) {
+		return new Predicate.Like(propertyName, LikePatterns.escape(value) + "%", ignoreCase).escaped();
+	}
+	
+	public static Predicate startsWith(String propertyName, String value, CaseInsensitivity caseInsensitivity) {
+		return new Predicate.Like(propertyName, LikePatterns.escape(value) + "%", caseInsensitivity).escaped();
+	}
+	
+	public static Predicate startsWith(String propertyName, String value) {
+		return startsWith(propertyName, value, false);
+	}
+	
+	public static Predicate endsWith(String propertyName, String value, boolean ignoreCase) {
+		return new Predicate.Like(propertyName, "%" + LikePatterns.escape(value), ignoreCase).escaped();
+	}
+	
+	public static Predicate endsWith(String propertyName, String value, CaseInsensitivity caseInsensitivity) {
+		return new Predicate.Like(propertyName, "%" + LikePatterns.escape(value), caseInsensitivity).escaped();
+	}
+	
+	public static Predicate endsWith(String propertyName, String value) {
+		return endsWith(propertyName, value, false);
 	}
 	
     public static Predicate contains(String propertyName, String value) {
@@ -157,7 +215,7 @@ public class Operator {
     
     public static Predicate collectionSize(String collection, String operator, int size) {
     	if (Arrays.asList("=", "!=", ">", ">=", "<", "<=").contains(operator))
-    		return expr(String.format("size(%s) %s %d", collection, operator, size));
+    		return new Predicate.CollectionSize(collection, operator, size);
     	
     	throw new IllegalArgumentException("Invalid operator: " + operator);
     }
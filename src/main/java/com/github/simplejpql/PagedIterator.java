@@ -0,0 +1,233 @@
+package com.github.simplejpql;
+
+import static com.github.simplejpql.Operator.and;
+import static com.github.simplejpql.Operator.gt;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.metamodel.EntityType;
+
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
+
+// walks the results of a select page by page, fetching the next pages in the background while the caller
+// works on the current one. each page is read on its own entity manager, so its entities are detached.
+// at most prefetchDepth pages are held ahead of the caller, and only one query runs at a time
+public class PagedIterator<T> implements Iterator<List<T>>, AutoCloseable {
+
+	private final EntityManagerFactory entityManagerFactory;
+
+	private final SelectStatementBuilder statement;
+
+	private final Class<T> resultClass;
+
+	// fetched or being fetched, but not yet handed to the caller
+	private final Deque<CompletableFuture<Page<T>>> pages = new ArrayDeque<>();
+
+	// the page scheduled last, which the next one is chained on
+	private CompletableFuture<Page<T>> tail;
+
+	private int pageSize = 1000;
+
+	private int prefetchDepth = 1;
+
+	private Executor executor = Transactions.EXECUTOR;
+
+	private String keyPath;
+
+	private Function<? super T, ?> key;
+
+	private boolean started, exhausted;
+
+	// paging replaces the statement's own firstResult and maxResults
+	public PagedIterator(EntityManagerFactory entityManagerFactory, SelectStatementBuilder statement, Class<T> resultClass) {
+		this.entityManagerFactory = Objects.requireNonNull(entityManagerFactory, "entityManagerFactory must not be null");
+		this.statement = Objects.requireNonNull(statement, "statement must not be null").copy();
+		this.resultClass = Objects.requireNonNull(resultClass, "resultClass must not be null");
+	}
+
+	public PagedIterator<T> pageSize(int pageSize) {
+		if (pageSize < 1)
+			throw new IllegalArgumentException("pageSize must be positive");
+
+		this.pageSize = pageSize;
+		return this;
+	}
+
+	// pages fetched ahead of the one being processed; fetching pauses while that many are waiting, and 0 fetches on demand
+	public PagedIterator<T> prefetchDepth(int prefetchDepth) {
+		if (prefetchDepth < 0)
+			throw new IllegalArgumentException("prefetchDepth must not be negative");
+
+		this.prefetchDepth = prefetchDepth;
+		return this;
+	}
+
+	public PagedIterator<T> executor(Executor executor) {
+		this.executor = Objects.requireNonNull(executor, "executor must not be null");
+		return this;
+	}
+
+	// continue each page after the last key of the previous one rather than at an offset, which the database
+	// would have to skip over. an unordered select of the root entity is keyed by its id without this
+	public PagedIterator<T> keyset(String keyPath, Function<? super T, ?> key) {
+		this.keyPath = Objects.requireNonNull(keyPath, "keyPath must not be null");
+		this.key = Objects.requireNonNull(key, "key must not be null");
+		return this;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (!started)
+			start();
+
+		if (pages.isEmpty()) {
+			if (exhausted)
+				return false;
+
+			schedule();
+		}
+
+		// an empty page means there are no rows left
+		if (join(pages.peekFirst()).results.isEmpty()) {
+			close();
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public List<T> next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		Page<T> page = join(pages.pollFirst());
+
+		if (page.last)
+			exhausted = true;
+		else
+			prefetch();
+
+		return page.results;
+	}
+
+	// cancels the pages fetched ahead; a query already running completes but its page is discarded
+	@Override
+	public void close() {
+		pages.forEach(page -> page.cancel(true));
+		pages.clear();
+		exhausted = true;
+	}
+
+	private void start() {
+		started = true;
+		String idPath = getIdPath();
+
+		if (keyPath == null && statement.getOrderBy().isEmpty() && idPath != null) {
+			keyPath = idPath;
+			key = entityManagerFactory.getPersistenceUnitUtil()::getIdentifier;
+		}
+
+		if (keyPath != null && !statement.getOrderBy().isEmpty() && !List.copyOf(statement.getOrderBy()).equals(List.of(keyPath)))
+			throw new IllegalArgumentException("Keyset continuation requires the statement to be ordered by " + keyPath + " alone");
+
+		// offsets only address the same rows on every page if the order is total
+		if (keyPath == null) {
+			if (statement.getOrderBy().isEmpty())
+				throw new IllegalArgumentException("Offset paging requires an ordered statement, or a keyset to continue from");
+
+			if (idPath != null && !statement.getOrderBy().contains(idPath))
+				statement.orderBy(idPath);
+		}
+
+		prefetch();
+	}
+
+	// the id of the root entity, when that is all the statement selects
+	private String getIdPath() {
+		if (statement.getProjection() != null || !statement.getGroupBy().isEmpty() || statement.getRootAlias() == null
+			|| !List.copyOf(statement.getSelect()).equals(List.of(statement.getRootAlias())))
+			return null;
+
+		EntityType<?> rootType = entityManagerFactory.getMetamodel().entity(Transactions.read(entityManagerFactory, statement::getRootType));
+		return rootType.hasSingleIdAttribute() ? statement.getRootAlias() + "." + rootType.getId(rootType.getIdType().getJavaType()).getName() : null;
+	}
+
+	private void prefetch() {
+		while (!exhausted && pages.size() < prefetchDepth) {
+			if (tail != null && tail.isDone() && !tail.isCompletedExceptionally() && tail.join().last) {
+				exhausted = true;
+				return;
+			}
+
+			schedule();
+		}
+	}
+
+	// each page is chained on the one before it, whose last row decides where it starts
+	private void schedule() {
+		CompletableFuture<Page<T>> previous = tail;
+
+		tail = previous == null
+			? CompletableFuture.supplyAsync(() -> fetch(null), executor)
+			: previous.thenApplyAsync(page -> page.last ? new Page<T>(Collections.emptyList(), page.offset, true) : fetch(page), executor);
+
+		pages.add(tail);
+	}
+
+	private Page<T> fetch(Page<T> previous) {
+		int offset = previous == null ? 0 : previous.offset + previous.results.size();
+		SelectStatementBuilder page = statement.copy().firstResult(0).maxResults(pageSize);
+
+		if (keyPath != null) {
+			if (statement.getOrderBy().isEmpty())
+				page = page.orderBy(keyPath);
+
+			if (previous != null)
+				page = page.where(and(statement.getWhere(), gt(keyPath, key.apply(previous.results.get(previous.results.size() - 1)))));
+		} else {
+			page = page.firstResult(offset);
+		}
+
+		SelectStatementBuilder query = page;
+		List<T> results = Transactions.read(entityManagerFactory, entityManager -> query.getResultList(entityManager, resultClass));
+		return new Page<>(results, offset, results.size() < pageSize);
+	}
+
+	private static <T> Page<T> join(CompletableFuture<Page<T>> page) {
+		try {
+			return page.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+
+			throw e;
+		}
+	}
+
+	private static class Page<T> {
+
+		private final List<T> results;
+
+		private final int offset;
+
+		private final boolean last;
+
+		Page(List<T> results, int offset, boolean last) {
+			this.results = results;
+			this.offset = offset;
+			this.last = last;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package com.github.simplejpql;
+
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import lombok.Getter;
+
+// opt-in tracking of how many distinct statement texts each query shape produces. a shape that keeps
+// producing new texts (inlined literals, varying in list sizes) fills the provider's plan cache
+public class PlanCacheAnalyzer {
+
+	public enum KeyStrategy {
+		// the statement text with its literals replaced by ?
+		FINGERPRINT,
+		// the first caller outside this library
+		CALL_SITE
+	}
+
+	private static final CodeSource LIBRARY = PlanCacheAnalyzer.class.getProtectionDomain().getCodeSource();
+
+	private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+	private static volatile boolean enabled;
+
+	private static volatile KeyStrategy keyStrategy = KeyStrategy.FINGERPRINT;
+
+	private static volatile int warningThreshold = 100;
+
+	private static volatile int maxKeys = 1000;
+
+	private static volatile Consumer<String> warningListener = Logger.getLogger(PlanCacheAnalyzer.class.getName())::warning;
+
+	private static final Map<String, Statistics> STATISTICS = new ConcurrentHashMap<>();
+
+	private PlanCacheAnalyzer() {}
+
+	public static void setEnabled(boolean enabled) {
+		PlanCacheAnalyzer.enabled = enabled;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setKeyStrategy(KeyStrategy keyStrategy) {
+		PlanCacheAnalyzer.keyStrategy = Objects.requireNonNull(keyStrategy, "keyStrategy must not be null");
+	}
+
+	// warns when a key reaches this many distinct texts, and again every time that count doubles
+	public static void setWarningThreshold(int warningThreshold) {
+		PlanCacheAnalyzer.warningThreshold = warningThreshold;
+	}
+
+	// keys beyond this are not tracked, so the analyzer cannot itself grow without bound
+	public static void setMaxKeys(int maxKeys) {
+		PlanCacheAnalyzer.maxKeys = maxKeys;
+	}
+
+	public static void setWarningListener(Consumer<String> warningListener) {
+		PlanCacheAnalyzer.warningListener = Objects.requireNonNull(warningListener, "warningListener must not be null");
+	}
+
+	public static Consumer<String> getWarningListener() {
+		return warningListener;
+	}
+
+	public static Collection<Statistics> getStatistics() {
+		return new ArrayList<>(STATISTICS.values());
+	}
+
+	public static void reset() {
+		STATISTICS.clear();
+	}
+
+	static void record(StatementBuilder<?> statement, String jpql) {
+		if (!enabled)
+			return;
+
+		String fingerprint = getFingerprint(jpql);
+		String key = keyStrategy == KeyStrategy.CALL_SITE ? getCallSite() : fingerprint;
+		Statistics statistics = STATISTICS.get(key);
+
+		if (statistics == null) {
+			if (STATISTICS.size() >= maxKeys)
+				return;
+
+			statistics = STATISTICS.computeIfAbsent(key, Statistics::new);
+		}
+
+		// the provider expands a collection parameter into one placeholder per element, so its size is part of the shape
+		StringBuilder shape = new StringBuilder(jpql);
+		statement.getNamedParameters().forEach((name, value) -> {
+			if (value instanceof Collection)
+				shape.append('|').append(name).append('=').append(((Collection<?>) value).size());
+		});
+
+		statistics.record(shape.toString(), !fingerprint.equals(jpql));
+	}
+
+	private static String getCallSite() {
+		return STACK_WALKER.walk(frames -> frames
+			.filter(frame -> {
+				CodeSource codeSource = frame.getDeclaringClass().getProtectionDomain().getCodeSource();
+				return codeSource != null && !codeSource.equals(LIBRARY);
+			})
+			.findFirst()
+			.map(frame -> frame.getClassName() + "." + frame.getMethodName() + ":" + frame.getLineNumber())
+			.orElse("unknown"));
+	}
+
+	// numeric and string literals replaced by ?, leaving parameters, identifiers and escape clauses alone
+	static String getFingerprint(CharSequence jpql) {
+		StringBuilder fingerprint = new StringBuilder(jpql.length());
+		int length = jpql.length();
+
+		for (int i = 0; i < length; i++) {
+			char c = jpql.charAt(i);
+			char previous = i > 0 ? jpql.charAt(i - 1) : ' ';
+			boolean identifierPart = Character.isLetterOrDigit(previous) || previous == '_' || previous == '$' || previous == ':' || previous == '.';
+
+			if (c == '\'' && !endsWith(fingerprint, "escape ")) {
+				int end = i + 1;
+
+				while (end < length && (jpql.charAt(end) != '\'' || (end + 1 < length && jpql.charAt(end + 1) == '\'')))
+					end += jpql.charAt(end) == '\'' ? 2 : 1;
+
+				fingerprint.append('?');
+				i = end;
+			} else if (Character.isDigit(c) && !identifierPart) {
+				while (i + 1 < length && (Character.isDigit(jpql.charAt(i + 1)) || jpql.charAt(i + 1) == '.'))
+					i++;
+
+				fingerprint.append('?');
+			} else {
+				fingerprint.append(c);
+			}
+		}
+
+		return fingerprint.toString();
+	}
+
+	private static boolean endsWith(StringBuilder builder, String suffix) {
+		int offset = builder.length() - suffix.length();
+		return offset >= 0 && builder.indexOf(suffix, offset) == offset;
+	}
+
+	public static class Statistics {
+
+		private static final int MAX_TRACKED_SHAPES = 10_000;
+
+		@Getter
+		private final String key;
+
+		private final AtomicLong executions = new AtomicLong();
+
+		private final Set<Long> shapes = ConcurrentHashMap.newKeySet();
+
+		@Getter
+		private volatile boolean inlinedLiterals;
+
+		private volatile int nextWarning;
+
+		Statistics(String key) {
+			this.key = key;
+		}
+
+		public long getExecutions() {
+			return executions.get();
+		}
+
+		// capped at 10,000, beyond which the shape is unbounded for all practical purposes
+		public int getDistinctShapes() {
+			return shapes.size();
+		}
+
+		void record(String shape, boolean inlinedLiterals) {
+			executions.incrementAndGet();
+
+			if (shapes.size() < MAX_TRACKED_SHAPES)
+				shapes.add(BinaryCodec.hash128(shape.getBytes(StandardCharsets.UTF_8))[0]);
+
+			if (inlinedLiterals && !this.inlinedLiterals) {
+				this.inlinedLiterals = true;
+				warningListener.accept(String.format("Statement %s inlines literals into its text, bind them as parameters instead", key));
+			}
+
+			int distinctShapes = shapes.size();
+
+			if (distinctShapes >= Math.max(nextWarning, warningThreshold)) {
+				synchronized (this) {
+					int threshold = Math.max(nextWarning, warningThreshold);
+
+					if (distinctShapes < threshold)
+						return;
+
+					nextWarning = threshold * 2;
+				}
+
+				warningListener.accept(String.format("Statement %s has produced %d distinct texts over %d executions", key, distinctShapes, executions.get()));
+			}
+		}
+	}
+}
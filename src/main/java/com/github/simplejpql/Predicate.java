@@ -4,15 +4,23 @@ import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toMap;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.BiConsumer;
 import java.util.function.BinaryOperator;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
 
 public abstract class Predicate {
 	
@@ -30,12 +38,37 @@ public abstract class Predicate {
 		return Collections.emptyMap(); 
 	}
 	
+	// this predicate's parameters in getNamedParameters() order, without collecting them into a map first
+	void forEachParameter(BiConsumer<String, Object> consumer) {
+		getNamedParameters().forEach(consumer);
+	}
+	
+	Map<String, Object> collectParameters() {
+		MapBuilder<String, Object> parameters = new MapBuilder<>();
+		forEachParameter(parameters::put);
+		return parameters.toMap();
+	}
+	
+	// resolved when rendered so a changed default applies to predicates that were already built
+	protected static CaseInsensitivity getCaseInsensitivity(boolean ignoreCase, CaseInsensitivity caseInsensitivity) {
+		return caseInsensitivity != null ? caseInsensitivity : ignoreCase ? CaseInsensitivity.getDefault() : null;
+	}
+	
 	protected static BinaryOperator<Object> throwingMerger() {
 		return (u,v) -> { throw new IllegalStateException(String.format("Duplicate key %s", u)); };
 	}
 
 	public abstract String toString();
 
+	void encode(BinaryCodec.Writer writer) {
+		throw new IllegalArgumentException(getClass().getName() + " cannot be encoded");
+	}
+
+	// this predicate followed by every predicate nested in it
+	Stream<Predicate> flatten() {
+		return Stream.of(this);
+	}
+
 	public static class And extends Predicate {
 		
 		public And(Collection<Predicate> predicates) {
@@ -52,6 +85,25 @@ public abstract class Predicate {
 				.collect(joining(" and ")));
 		}
 		
+		@Override
+		Stream<Predicate> flatten() {
+			return Stream.concat(Stream.of(this), Optional.ofNullable(predicates).orElse(emptyList()).stream()
+				.filter(Objects::nonNull)
+				.flatMap(Predicate::flatten));
+		}
+		
+		@Override
+		void encode(BinaryCodec.Writer writer) {
+			writer.writeByte(BinaryCodec.AND);
+			writer.writePredicates(predicates);
+		}
+		
+		@Override
+		void forEachParameter(BiConsumer<String, Object> consumer) {
+			if (predicates != null)
+				predicates.forEach(predicate -> Optional.ofNullable(predicate).ifPresent(p -> p.forEachParameter(consumer)));
+		}
+		
 		@Override
 		public Map<String, Object> getNamedParameters() {			
 			return Optional.ofNullable(predicates).orElse(emptyList()).stream()
@@ -77,6 +129,25 @@ public abstract class Predicate {
 				.collect(joining(" or ")));
 		}
 		
+		@Override
+		Stream<Predicate> flatten() {
+			return Stream.concat(Stream.of(this), Optional.ofNullable(predicates).orElse(emptyList()).stream()
+				.filter(Objects::nonNull)
+				.flatMap(Predicate::flatten));
+		}
+		
+		@Override
+		void encode(BinaryCodec.Writer writer) {
+			writer.writeByte(BinaryCodec.OR);
+			writer.writePredicates(predicates);
+		}
+		
+		@Override
+		void forEachParameter(BiConsumer<String, Object> consumer) {
+			if (predicates != null)
+				predicates.forEach(predicate -> Optional.ofNullable(predicate).ifPresent(p -> p.forEachParameter(consumer)));
+		}
+		
 		@Override
 		public Map<String, Object> getNamedParameters() {
 			return Optional.ofNullable(predicates).orElse(emptyList()).stream()
@@ -97,7 +168,34 @@ public abstract class Predicate {
 
 		@Override
 		public String toString() {
-			return expression;
+			return AutoParameterization.isEnabled() ? AutoParameterization.lift(expression, this::getLiteralName, new ArrayList<>()) : expression;
+		}
+		
+		@Override
+		public Map<String, Object> getNamedParameters() {
+			return AutoParameterization.isEnabled() ? collectParameters() : Collections.emptyMap();
+		}
+		
+		@Override
+		void forEachParameter(BiConsumer<String, Object> consumer) {
+			if (!AutoParameterization.isEnabled())
+				return;
+			
+			List<Object> values = new ArrayList<>();
+			AutoParameterization.lift(expression, this::getLiteralName, values);
+			
+			for (int i = 0; i < values.size(); i++)
+				consumer.accept(getLiteralName(i + 1), values.get(i));
+		}
+		
+		private String getLiteralName(int index) {
+			return generateParameterName("literal_" + index);
+		}
+		
+		@Override
+		void encode(BinaryCodec.Writer writer) {
+			writer.writeByte(BinaryCodec.EXPRESSION);
+			writer.writeString(expression);
 		}
 	}
 	
@@ -115,10 +213,26 @@ public abstract class Predicate {
 			return String.format("not (%s)", predicate);
 		}
 		
+		@Override
+		Stream<Predicate> flatten() {
+			return Stream.concat(Stream.of(this), predicate.flatten());
+		}
+		
+		@Override
+		void encode(BinaryCodec.Writer writer) {
+			writer.writeByte(BinaryCodec.NOT);
+			writer.writePredicate(predicate);
+		}
+		
 		@Override
 		public Map<String, Object> getNamedParameters() {
 			return predicate.getNamedParameters();
 		}
+		
+		@Override
+		void forEachParameter(BiConsumer<String, Object> consumer) {
+			predicate.forEachParameter(consumer);
+		}
 	}
 	
 	public static class Equals<T> extends Predicate {
@@ -131,6 +245,8 @@ public abstract class Predicate {
 				
 		private boolean ignoreCase;
 		
+		private CaseInsensitivity caseInsensitivity;
+		
 		public Equals(String operand, T value, boolean ignoreCase) {
 			this.operand = operand;
 			this.value = value;
@@ -143,14 +259,38 @@ public abstract class Predicate {
 			this.ignoreCase = ignoreCase;
 		}
 		
+		public Equals(String operand, T value, CaseInsensitivity caseInsensitivity) {
+			this(operand, value, caseInsensitivity != null);
+			this.caseInsensitivity = caseInsensitivity;
+		}
+		
 		@Override
 		public Map<String, Object> getNamedParameters() {
-			return new MapBuilder<String, Object>().put(generateParameterName(operand), Optional.ofNullable(valueSupplier).map(s -> s.get()).orElse(value)).toMap();
+			return collectParameters();
+		}
+		
+		@Override
+		void forEachParameter(BiConsumer<String, Object> consumer) {
+			Object resolved = Optional.ofNullable(valueSupplier).map(s -> s.get()).orElse(value);
+			
+			consumer.accept(generateParameterName(operand), Optional.ofNullable(getCaseInsensitivity(ignoreCase, caseInsensitivity)).map(c -> c.getValue(resolved)).orElse(resolved));
 		}
 
 		@Override
 		public String toString() {
-			return String.format(ignoreCase ? "lower(%s) = lower(:%s)" : "%s = :%s", operand, generateParameterName(operand));
+			CaseInsensitivity caseInsensitivity = getCaseInsensitivity(ignoreCase, this.caseInsensitivity);
+			
+			return caseInsensitivity == null
+				? String.format("%s = :%s", operand, generateParameterName(operand))
+				: String.format("%s = %s", caseInsensitivity.getOperand(operand), caseInsensitivity.getParameter(generateParameterName(operand)));
+		}
+		
+		@Override
+		void encode(BinaryCodec.Writer writer) {
+			writer.writeByte(BinaryCodec.EQUALS);
+			writer.writeCaseInsensitivity(ignoreCase, caseInsensitivity);
+			writer.writeString(operand);
+			writer.writeValue(Optional.ofNullable(valueSupplier).map(s -> (Object) s.get()).orElse(value));
 		}
 	}
 	
@@ -170,13 +310,26 @@ public abstract class Predicate {
 
 		@Override
 		public Map<String, Object> getNamedParameters() {
-			return new MapBuilder<String, Object>().put(generateParameterName(property), value).toMap();
+			return collectParameters();
+		}
+		
+		@Override
+		void forEachParameter(BiConsumer<String, Object> consumer) {
+			consumer.accept(generateParameterName(property), value);
 		}
 
 		@Override
 		public String toString() {
 			return String.format("%s >%s :%s", property, inclusive ? "=" : "", generateParameterName(property));
 		}
+		
+		@Override
+		void encode(BinaryCodec.Writer writer) {
+			writer.writeByte(BinaryCodec.GREATER_THAN);
+			writer.writeString(property);
+			writer.writeValue(value);
+			writer.writeBoolean(inclusive);
+		}
 
 	}
 
@@ -196,13 +349,26 @@ public abstract class Predicate {
 
 		@Override
 		public Map<String, Object> getNamedParameters() {
-			return new MapBuilder<String, Object>().put(generateParameterName(property), value).toMap();
+			return collectParameters();
+		}
+		
+		@Override
+		void forEachParameter(BiConsumer<String, Object> consumer) {
+			consumer.accept(generateParameterName(property), value);
 		}
 
 		@Override
 		public String toString() {
 			return String.format("%s <%s :%s", property, inclusive ? "=" : "", generateParameterName(property));
 		}
+		
+		@Override
+		void encode(BinaryCodec.Writer writer) {
+			writer.writeByte(BinaryCodec.LESS_THAN);
+			writer.writeString(property);
+			writer.writeValue(value);
+			writer.writeBoolean(inclusive);
+		}
 	}
 	
 	public static class In extends Predicate {
@@ -226,7 +392,124 @@ public abstract class Predicate {
 		
 		@Override
 		public Map<String, Object> getNamedParameters() {
-			return new MapBuilder<String, Object>().put(generateParameterName(property), values).toMap();
+			return collectParameters();
+		}
+		
+		@Override
+		void forEachParameter(BiConsumer<String, Object> consumer) {
+			consumer.accept(generateParameterName(property), values);
+		}
+		
+		@Override
+		void encode(BinaryCodec.Writer writer) {
+			writer.writeByte(BinaryCodec.IN);
+			writer.writeString(property);
+			writer.writeValue(values);
+		}
+	}
+	
+
+	public static class Exists extends Predicate {
+
+		private SelectStatementBuilder subquery;
+
+		public Exists(SelectStatementBuilder subquery) {
+			this.subquery = subquery;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("exists (%s)", subquery.renderSubquery());
+		}
+		
+		@Override
+		void encode(BinaryCodec.Writer writer) {
+			writer.writeByte(BinaryCodec.EXISTS);
+			writer.writeSelect(subquery);
+		}
+
+		@Override
+		public Map<String, Object> getNamedParameters() {
+			return subquery.getPrefixedNamedParameters();
+		}
+		
+		@Override
+		void forEachParameter(BiConsumer<String, Object> consumer) {
+			subquery.forEachPrefixedParameter(consumer);
+		}
+	}
+	
+
+	public static class InSubquery extends Predicate {
+
+		private String property;
+
+		private SelectStatementBuilder subquery;
+
+		public InSubquery(String property, SelectStatementBuilder subquery) {
+			this.property = property;
+			this.subquery = subquery;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s in (%s)", property, subquery.renderSubquery());
+		}
+		
+		@Override
+		void encode(BinaryCodec.Writer writer) {
+			writer.writeByte(BinaryCodec.IN_SUBQUERY);
+			writer.writeString(property);
+			writer.writeSelect(subquery);
+		}
+
+		@Override
+		public Map<String, Object> getNamedParameters() {
+			return subquery.getPrefixedNamedParameters();
+		}
+		
+		@Override
+		void forEachParameter(BiConsumer<String, Object> consumer) {
+			subquery.forEachPrefixedParameter(consumer);
+		}
+	}
+	
+
+	public static class CollectionSize extends Predicate {
+
+		private String collection;
+
+		private String operator;
+
+		private int size;
+
+		public CollectionSize(String collection, String operator, int size) {
+			this.collection = collection;
+			this.operator = operator;
+			this.size = size;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("size(%s) %s :%s", collection, operator, generateParameterName(collection + "_size"));
+		}
+
+		@Override
+		public Map<String, Object> getNamedParameters() {
+			return collectParameters();
+		}
+		
+		@Override
+		void forEachParameter(BiConsumer<String, Object> consumer) {
+			consumer.accept(generateParameterName(collection + "_size"), size);
+		}
+		
+		@Override
+		void encode(BinaryCodec.Writer writer) {
+			writer.writeByte(BinaryCodec.COLLECTION_SIZE);
+			writer.writeString(collection);
+			writer.writeString(operator);
+			writer.writeZigZag(size);
 		}
 	}
 	
@@ -243,6 +526,12 @@ public abstract class Predicate {
 		public String toString() {
 			return String.format("%s is null", property);
 		}
+		
+		@Override
+		void encode(BinaryCodec.Writer writer) {
+			writer.writeByte(BinaryCodec.IS_NULL);
+			writer.writeString(property);
+		}
 	}
 	
 
@@ -250,25 +539,94 @@ public abstract class Predicate {
 
 		private String operand;
 		private Object expression;
+		private boolean ignoreCase;
+		private CaseInsensitivity caseInsensitivity;
+		private boolean escaped;
 		
 		public Like(String operand, String expression, boolean ignoreCase) {
 			this.operand = operand;
 			this.expression = expression;
+			this.ignoreCase = ignoreCase;
 		}
 
 		public Like(String operand, Supplier<String> expression, boolean ignoreCase) {
 			this.operand = operand;
 			this.expression = expression;
+			this.ignoreCase = ignoreCase;
+		}
+		
+		public Like(String operand, String expression, CaseInsensitivity caseInsensitivity) {
+			this(operand, expression, caseInsensitivity != null);
+			this.caseInsensitivity = caseInsensitivity;
+		}
+		
+		// the pattern was built from literals escaped with LikePatterns.escape
+		Like escaped() {
+			this.escaped = true;
+			return this;
+		}
+		
+		String getOperand() {
+			return operand;
+		}
+		
+		LikePatterns.Shape getShape() {
+			Object pattern = getValue(expression);
+			return pattern instanceof String ? LikePatterns.getShape((String) pattern, escaped) : LikePatterns.Shape.OTHER;
+		}
+		
+		// the lower and upper bound of a prefix pattern rewritten as a range, or null to keep the like.
+		// a case insensitive prefix is lowered before its upper bound is taken, or "abZ" would end at "ab["
+		private String[] getRange(CaseInsensitivity caseInsensitivity) {
+			if (!LikePatterns.isPrefixRangeRewrite() || getShape() != LikePatterns.Shape.PREFIX)
+				return null;
+			
+			String prefix = LikePatterns.getPrefix((String) getValue(expression), escaped);
+			String lower = caseInsensitivity != null ? prefix.toLowerCase(Locale.ROOT) : prefix;
+			String upper = LikePatterns.getUpperBound(lower);
+			
+			return upper != null ? new String[] {lower, upper} : null;
 		}
 		
 		@Override
 		public Map<String, Object> getNamedParameters() {
-			return new MapBuilder<String, Object>().put(generateParameterName(operand), getValue(expression)).toMap();
+			return collectParameters();
+		}
+		
+		@Override
+		void forEachParameter(BiConsumer<String, Object> consumer) {
+			CaseInsensitivity caseInsensitivity = getCaseInsensitivity(ignoreCase, this.caseInsensitivity);
+			UnaryOperator<Object> normalizer = value -> caseInsensitivity != null ? caseInsensitivity.getValue(value) : value;
+			
+			String[] range = getRange(caseInsensitivity);
+			
+			if (range != null) {
+				consumer.accept(generateParameterName(operand + "_lo"), range[0]);
+				consumer.accept(generateParameterName(operand + "_hi"), range[1]);
+			} else {
+				consumer.accept(generateParameterName(operand), normalizer.apply(getValue(expression)));
+			}
 		}
 
 		@Override
 		public String toString() {
-			return String.format("%s like :%s", operand, generateParameterName(operand));
+			CaseInsensitivity caseInsensitivity = getCaseInsensitivity(ignoreCase, this.caseInsensitivity);
+			String lhs = caseInsensitivity != null ? caseInsensitivity.getOperand(operand) : operand;
+			UnaryOperator<String> parameter = name -> caseInsensitivity != null ? caseInsensitivity.getParameter(name) : ":" + name;
+			
+			if (getRange(caseInsensitivity) != null)
+				return String.format("(%s >= %s and %s < %s)", lhs, parameter.apply(generateParameterName(operand + "_lo")), lhs, parameter.apply(generateParameterName(operand + "_hi")));
+			
+			return String.format("%s like %s%s", lhs, parameter.apply(generateParameterName(operand)), escaped ? " escape '" + LikePatterns.ESCAPE + "'" : "");
+		}
+		
+		@Override
+		void encode(BinaryCodec.Writer writer) {
+			writer.writeByte(BinaryCodec.LIKE);
+			writer.writeCaseInsensitivity(ignoreCase, caseInsensitivity);
+			writer.writeString(operand);
+			writer.writeValue(getValue(expression));
+			writer.writeBoolean(escaped);
 		}
 	}
 }
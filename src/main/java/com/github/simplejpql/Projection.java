@@ -0,0 +1,140 @@
+package com.github.simplejpql;
+
+import static java.util.stream.Collectors.joining;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.RecordComponent;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import jakarta.persistence.Tuple;
+
+public class Projection<T> {
+
+	public enum Mode {
+		CONSTRUCTOR,
+		TUPLE
+	}
+
+	private final Class<T> type;
+
+	private final List<String> properties;
+
+	private final Map<String, String> expressions = new LinkedHashMap<>();
+
+	private final MethodHandle constructor;
+
+	private Mode mode = Mode.CONSTRUCTOR;
+
+	private Projection(Class<T> type) {
+		this.type = type;
+
+		Class<?>[] parameterTypes;
+
+		if (type.isRecord()) {
+			RecordComponent[] components = type.getRecordComponents();
+			properties = Arrays.stream(components).map(RecordComponent::getName).collect(Collectors.toList());
+			parameterTypes = Arrays.stream(components).map(RecordComponent::getType).toArray(Class<?>[]::new);
+		} else {
+			// the order of getDeclaredFields() is unspecified, so plain classes need a constructor whose parameters are
+			// named after every instance field, which takes compiling them with -parameters
+			Constructor<?> constructor = getNamedConstructor(type);
+			properties = Arrays.stream(constructor.getParameters()).map(Parameter::getName).collect(Collectors.toList());
+			parameterTypes = constructor.getParameterTypes();
+		}
+
+		try {
+			Constructor<T> constructor = type.getDeclaredConstructor(parameterTypes);
+			constructor.setAccessible(true);
+			this.constructor = MethodHandles.lookup()
+				.unreflectConstructor(constructor)
+				.asSpreader(Object[].class, parameterTypes.length);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			throw new IllegalArgumentException(String.format("%s has no constructor matching %s", type.getName(), properties), e);
+		}
+	}
+
+	private static Constructor<?> getNamedConstructor(Class<?> type) {
+		Map<String, Class<?>> fields = Arrays.stream(type.getDeclaredFields())
+			.filter(field -> !Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers()))
+			.collect(Collectors.toMap(Field::getName, Field::getType));
+
+		return Arrays.stream(type.getDeclaredConstructors())
+			.filter(constructor -> constructor.getParameterCount() == fields.size() && Arrays.stream(constructor.getParameters())
+				.allMatch(parameter -> parameter.isNamePresent() && parameter.getType() == fields.get(parameter.getName())))
+			.findFirst()
+			.orElseThrow(() -> new IllegalArgumentException(String.format(
+				"%s has no constructor with parameters named after its fields %s; compile it with -parameters or make it a record",
+				type.getName(), fields.keySet())));
+	}
+
+	public static <T> Projection<T> of(Class<T> type) {
+		return new Projection<>(type);
+	}
+
+	public Projection<T> map(String property, String expression) {
+		if (!properties.contains(property))
+			throw new IllegalArgumentException(String.format("%s has no property %s", type.getName(), property));
+
+		expressions.put(property, expression);
+		return this;
+	}
+
+	public Projection<T> mode(Mode mode) {
+		this.mode = mode;
+		return this;
+	}
+
+	public Projection<T> tuple() {
+		return mode(Mode.TUPLE);
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public List<String> getProperties() {
+		return Collections.unmodifiableList(properties);
+	}
+
+	Map<String, String> getExpressions() {
+		return Collections.unmodifiableMap(expressions);
+	}
+
+	public String getExpression(String property, String rootAlias) {
+		return expressions.getOrDefault(property, rootAlias != null ? rootAlias + "." + property : property);
+	}
+
+	public String getSelection(String rootAlias) {
+		return mode == Mode.CONSTRUCTOR
+			? String.format("new %s(%s)", type.getName(), properties.stream()
+				.map(property -> getExpression(property, rootAlias))
+				.collect(joining(", ")))
+			: properties.stream()
+				.map(property -> getExpression(property, rootAlias) + " as " + property)
+				.collect(joining(", "));
+	}
+
+	public T toDto(Tuple tuple) {
+		try {
+			return type.cast(constructor.invoke(tuple.toArray()));
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException("Unable to instantiate " + type.getName(), e);
+		}
+	}
+}
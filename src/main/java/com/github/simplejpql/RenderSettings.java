@@ -0,0 +1,64 @@
+package com.github.simplejpql;
+
+import java.util.function.Supplier;
+
+// the global toggles that change how predicates render and bind, captured when a statement is frozen so its
+// cached text and the parameters bound against it keep agreeing after the toggles change
+final class RenderSettings {
+
+	private static final ThreadLocal<RenderSettings> CURRENT = new ThreadLocal<>();
+
+	private final boolean prefixRangeRewrite;
+
+	private final boolean autoParameterization;
+
+	private final CaseInsensitivity caseInsensitivity;
+
+	private RenderSettings(boolean prefixRangeRewrite, boolean autoParameterization, CaseInsensitivity caseInsensitivity) {
+		this.prefixRangeRewrite = prefixRangeRewrite;
+		this.autoParameterization = autoParameterization;
+		this.caseInsensitivity = caseInsensitivity;
+	}
+
+	static RenderSettings capture() {
+		return new RenderSettings(LikePatterns.isPrefixRangeRewrite(), AutoParameterization.isEnabled(), CaseInsensitivity.getDefault());
+	}
+
+	// the settings work on this thread is running under, null outside of call()
+	static RenderSettings current() {
+		return CURRENT.get();
+	}
+
+	<T> T call(Supplier<T> work) {
+		RenderSettings previous = CURRENT.get();
+		CURRENT.set(this);
+
+		try {
+			return work.get();
+		} finally {
+			if (previous != null)
+				CURRENT.set(previous);
+			else
+				CURRENT.remove();
+		}
+	}
+
+	void run(Runnable work) {
+		call(() -> {
+			work.run();
+			return null;
+		});
+	}
+
+	boolean isPrefixRangeRewrite() {
+		return prefixRangeRewrite;
+	}
+
+	boolean isAutoParameterization() {
+		return autoParameterization;
+	}
+
+	CaseInsensitivity getCaseInsensitivity() {
+		return caseInsensitivity;
+	}
+}
@@ -0,0 +1,135 @@
+package com.github.simplejpql;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.LockTimeoutException;
+import jakarta.persistence.PessimisticLockException;
+
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
+
+// re-runs work that lost a lock race in a fresh transaction, backing off exponentially with jitter so that
+// the losers of one race do not all collide again on the next attempt
+public class RetryExecutor {
+
+	private final EntityManagerFactory entityManagerFactory;
+
+	private final AtomicLong retries = new AtomicLong(), giveUps = new AtomicLong();
+
+	private int maxAttempts = 5;
+
+	private Duration initialBackoff = Duration.ofMillis(50);
+
+	private Duration maxBackoff = Duration.ofSeconds(2);
+
+	private double multiplier = 2;
+
+	private double jitter = 1;
+
+	public RetryExecutor(EntityManagerFactory entityManagerFactory) {
+		this.entityManagerFactory = Objects.requireNonNull(entityManagerFactory, "entityManagerFactory must not be null");
+	}
+
+	public RetryExecutor maxAttempts(int maxAttempts) {
+		if (maxAttempts <= 0)
+			throw new IllegalArgumentException("maxAttempts must be positive");
+
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+	public RetryExecutor backoff(Duration initialBackoff, Duration maxBackoff, double multiplier) {
+		if (multiplier < 1)
+			throw new IllegalArgumentException("multiplier must be at least 1");
+
+		this.initialBackoff = Objects.requireNonNull(initialBackoff, "initialBackoff must not be null");
+		this.maxBackoff = Objects.requireNonNull(maxBackoff, "maxBackoff must not be null");
+		this.multiplier = multiplier;
+		return this;
+	}
+
+	// the fraction of each backoff that is randomised: 0 sleeps the full backoff, 1 anywhere between none and all of it
+	public RetryExecutor jitter(double jitter) {
+		if (jitter < 0 || jitter > 1)
+			throw new IllegalArgumentException("jitter must be between 0 and 1");
+
+		this.jitter = jitter;
+		return this;
+	}
+
+	public <T> List<T> getResultList(SelectStatementBuilder statement, Class<T> resultClass) {
+		return execute(entityManager -> statement.getResultList(entityManager, resultClass));
+	}
+
+	public int executeUpdate(StatementBuilder<?> statement) {
+		return execute(entityManager -> statement.createQuery(entityManager).executeUpdate());
+	}
+
+	// work runs in a new transaction on every attempt, so it must not carry state over from a failed one
+	public <T> T execute(Function<EntityManager, T> work) {
+		double backoff = initialBackoff.toNanos();
+
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return Transactions.write(entityManagerFactory, work);
+			} catch (RuntimeException e) {
+				if (!isRetryable(e))
+					throw e;
+
+				long delay = (long) (Math.min(backoff, maxBackoff.toNanos()) * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+				backoff *= multiplier;
+
+				if (attempt >= maxAttempts || !sleep(delay)) {
+					giveUps.incrementAndGet();
+					throw e;
+				}
+
+				retries.incrementAndGet();
+			}
+		}
+	}
+
+	// false when the thread was interrupted or its deadline would expire first
+	private static boolean sleep(long delay) {
+		if (Deadline.current().map(deadline -> deadline.getRemaining().toNanos() <= delay).orElse(false))
+			return false;
+
+		try {
+			TimeUnit.NANOSECONDS.sleep(delay);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	// lock timeouts, and deadlocks or serialization failures, which SQL reports as a transaction rollback (class 40)
+	public static boolean isRetryable(Throwable exception) {
+		for (Throwable cause = exception; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+			if (cause instanceof PessimisticLockException || cause instanceof LockTimeoutException || cause instanceof SQLTransactionRollbackException)
+				return true;
+
+			if (cause instanceof SQLException && ((SQLException) cause).getSQLState() != null && ((SQLException) cause).getSQLState().startsWith("40"))
+				return true;
+		}
+
+		return false;
+	}
+
+	public long getRetries() {
+		return retries.get();
+	}
+
+	public long getGiveUps() {
+		return giveUps.get();
+	}
+}
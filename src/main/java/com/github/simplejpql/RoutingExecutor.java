@@ -0,0 +1,160 @@
+package com.github.simplejpql;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceException;
+
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
+
+public class RoutingExecutor {
+
+	private final EntityManagerFactory primary;
+
+	private final List<Replica> replicas = new ArrayList<>();
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	private final ThreadLocal<Integer> primaryScope = ThreadLocal.withInitial(() -> 0);
+
+	private final ThreadLocal<Long> lastWrite = new ThreadLocal<>();
+
+	private Duration retryAfter = Duration.ofSeconds(30);
+
+	private Duration stickyAfterWrite = Duration.ZERO;
+
+	public RoutingExecutor(EntityManagerFactory primary, Collection<EntityManagerFactory> replicas) {
+		this.primary = Objects.requireNonNull(primary, "primary must not be null");
+
+		replicas.forEach(replica -> this.replicas.add(new Replica(replica)));
+	}
+
+	public RoutingExecutor(EntityManagerFactory primary, EntityManagerFactory...replicas) {
+		this(primary, List.of(replicas));
+	}
+
+	public RoutingExecutor retryAfter(Duration retryAfter) {
+		this.retryAfter = retryAfter;
+		return this;
+	}
+
+	public RoutingExecutor stickyAfterWrite(Duration stickyAfterWrite) {
+		this.stickyAfterWrite = stickyAfterWrite;
+		return this;
+	}
+
+	public static boolean requiresPrimary(StatementBuilder<?> statement) {
+		return !(statement instanceof SelectStatementBuilder)
+			|| (statement.getLockMode() != null && statement.getLockMode() != LockModeType.NONE);
+	}
+
+	// read-your-writes escape hatch: every statement executed by the work on this thread goes to the primary
+	public <T> T onPrimary(Supplier<T> work) {
+		primaryScope.set(primaryScope.get() + 1);
+
+		try {
+			return work.get();
+		} finally {
+			primaryScope.set(primaryScope.get() - 1);
+		}
+	}
+
+	public <T> List<T> getResultList(SelectStatementBuilder statement, Class<T> resultClass) {
+		return execute(statement, entityManager -> statement.getResultList(entityManager, resultClass));
+	}
+
+	public int executeUpdate(StatementBuilder<?> statement) {
+		return execute(statement, entityManager -> statement.createQuery(entityManager).executeUpdate());
+	}
+
+	public <T> T execute(StatementBuilder<?> statement, Function<EntityManager, T> work) {
+		if (requiresPrimary(statement)) {
+			T result = Transactions.write(primary, work);
+			lastWrite.set(System.nanoTime());
+			return result;
+		}
+
+		if (isPinnedToPrimary())
+			return Transactions.read(primary, work);
+
+		int size = replicas.size();
+		int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+
+		for (int i = 0; i < size; i++) {
+			Replica replica = replicas.get((start + i) % size);
+
+			if (!replica.isHealthy())
+				continue;
+
+			try {
+				return Transactions.read(replica.entityManagerFactory, work);
+			} catch (PersistenceException e) {
+				if (!isConnectionFailure(e))
+					throw e;
+
+				replica.markDown(retryAfter);
+			}
+		}
+
+		return Transactions.read(primary, work);
+	}
+
+	// only an unreachable replica is taken out of rotation; timeouts, lock failures and bad statements are the caller's
+	public static boolean isConnectionFailure(Throwable exception) {
+		for (Throwable cause = exception; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+			if (cause instanceof SQLTransientConnectionException || cause instanceof SQLNonTransientConnectionException
+				|| cause.getClass().getSimpleName().equals("JDBCConnectionException"))
+				return true;
+
+			if (cause instanceof SQLException && ((SQLException) cause).getSQLState() != null && ((SQLException) cause).getSQLState().startsWith("08"))
+				return true;
+		}
+
+		return false;
+	}
+
+	private boolean isPinnedToPrimary() {
+		if (primaryScope.get() > 0)
+			return true;
+
+		Long written = lastWrite.get();
+		return written != null && System.nanoTime() - written < stickyAfterWrite.toNanos();
+	}
+
+	public int getHealthyReplicaCount() {
+		return (int) replicas.stream().filter(Replica::isHealthy).count();
+	}
+
+	private static class Replica {
+
+		private final EntityManagerFactory entityManagerFactory;
+
+		private final AtomicLong downUntil = new AtomicLong();
+
+		Replica(EntityManagerFactory entityManagerFactory) {
+			this.entityManagerFactory = entityManagerFactory;
+		}
+
+		boolean isHealthy() {
+			long until = downUntil.get();
+			return until == 0 || System.nanoTime() - until >= 0;
+		}
+
+		void markDown(Duration retryAfter) {
+			downUntil.set(System.nanoTime() + retryAfter.toNanos());
+		}
+	}
+}
@@ -0,0 +1,416 @@
+package com.github.simplejpql;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Tuple;
+
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
+
+// runs a select on every shard in parallel and combines the results as if they came from one database.
+// results are detached, since each shard's entity manager is closed once its part of the work is done
+public class ShardedExecutor {
+
+	private static final Pattern ORDER = Pattern.compile("(?is)(.+?)(?:\\s+(asc|desc))?(?:\\s+nulls\\s+(first|last))?");
+
+	private static final Pattern AGGREGATE = Pattern.compile("(?is)(count|sum|min|max)\\s*\\((.*)\\)");
+
+	private final List<EntityManagerFactory> shards;
+
+	private Executor executor = Transactions.EXECUTOR;
+
+	private Comparator<? super String> collation;
+
+	public ShardedExecutor(Collection<EntityManagerFactory> shards) {
+		if (shards.isEmpty())
+			throw new IllegalArgumentException("At least one shard is required");
+
+		this.shards = List.copyOf(shards);
+	}
+
+	public ShardedExecutor(EntityManagerFactory...shards) {
+		this(List.of(shards));
+	}
+
+	public ShardedExecutor executor(Executor executor) {
+		this.executor = Objects.requireNonNull(executor, "executor must not be null");
+		return this;
+	}
+
+	// how the shards order strings, e.g. a java.text.Collator for their locale. each shard sorts and cuts its rows by
+	// its own collation, so merging them by any other order would interleave the shards wrongly; without one,
+	// string order keys and string min or max are rejected
+	public ShardedExecutor collation(Comparator<? super String> collation) {
+		this.collation = Objects.requireNonNull(collation, "collation must not be null");
+		return this;
+	}
+
+	// each shard returns its first firstResult + maxResults rows in order; the global page is cut from their merge
+	public <T> List<T> getResultList(SelectStatementBuilder statement, Class<T> resultClass) {
+		int firstResult = statement.getFirstResult() != null ? statement.getFirstResult() : 0;
+		Integer maxResults = statement.getMaxResults();
+
+		if (statement.getOrderBy().isEmpty()) {
+			SelectStatementBuilder shardStatement = pushDown(statement.copy(), firstResult, maxResults);
+			List<List<T>> results = scatter(entityManager -> shardStatement.getResultList(entityManager, resultClass));
+			return page(results.stream().flatMap(List::stream).iterator(), firstResult, maxResults);
+		}
+
+		if (statement.getProjection() != null)
+			throw new IllegalArgumentException("Ordered results can only be merged for a select list, not a projection");
+
+		// order keys not already selected are selected after the original items, so rows from different shards can be compared
+		List<String> select = getSelect(statement);
+		List<String> shardSelect = new ArrayList<>(select), shardOrderBy = new ArrayList<>();
+		List<Integer> keys = new ArrayList<>();
+		Comparator<Tuple> comparator = (left, right) -> 0;
+
+		for (String item : split(statement.getOrderBy())) {
+			Order order = new Order(item, collation);
+
+			if (!shardSelect.contains(order.expression))
+				shardSelect.add(order.expression);
+
+			int index = shardSelect.indexOf(order.expression);
+			keys.add(index);
+			comparator = comparator.thenComparing(tuple -> tuple.get(index), order);
+			shardOrderBy.add(order.toString());
+		}
+
+		SelectStatementBuilder shardStatement = pushDown(statement.copy(shardSelect, shardOrderBy), firstResult, maxResults);
+		List<List<Tuple>> results = scatter(entityManager -> shardStatement.createQuery(entityManager, Tuple.class).getResultList());
+		checkCollation(results, keys);
+
+		Iterator<Tuple> merged = merge(results, comparator);
+		List<T> page = new ArrayList<>();
+
+		page(merged, firstResult, maxResults).forEach(tuple -> page.add(resultClass.cast(select.size() == 1
+			? tuple.get(0)
+			: Arrays.copyOf(tuple.toArray(), select.size()))));
+
+		return page;
+	}
+
+	// combines count, sum, min and max items per group; any other select item is taken to be part of the group key.
+	// the combined groups are ordered and paged here, which is why order by items must be select items
+	public List<Object[]> getAggregateResultList(SelectStatementBuilder statement) {
+		if (statement.getProjection() != null)
+			throw new IllegalArgumentException("Aggregates can only be combined for a select list, not a projection");
+
+		// a shard only sees part of each group, so it cannot tell which groups pass
+		if (statement.getHaving() != null)
+			throw new IllegalArgumentException("Having cannot be applied to aggregates combined across shards");
+
+		List<String> select = split(statement.getSelect());
+		List<String> functions = new ArrayList<>();
+
+		for (String item : select) {
+			Matcher matcher = AGGREGATE.matcher(item.trim());
+			String function = matcher.matches() ? matcher.group(1).toLowerCase() : null;
+
+			if (function != null && function.equals("count") && matcher.group(2).trim().toLowerCase().startsWith("distinct"))
+				throw new IllegalArgumentException("Distinct counts cannot be combined across shards: " + item);
+
+			if (function == null && item.trim().toLowerCase().matches("(avg|count|sum|min|max)\\s*\\(.*"))
+				throw new IllegalArgumentException("Unsupported aggregate: " + item);
+
+			functions.add(function);
+		}
+
+		Comparator<Object[]> comparator = null;
+		List<Integer> keys = new ArrayList<>();
+
+		for (int i = 0; i < functions.size(); i++)
+			if ("min".equals(functions.get(i)) || "max".equals(functions.get(i)))
+				keys.add(i);
+
+		for (String item : split(statement.getOrderBy())) {
+			Order order = new Order(item, collation);
+			int index = select.indexOf(order.expression);
+
+			if (index < 0)
+				throw new IllegalArgumentException("Combined aggregates can only be ordered by select items: " + item);
+
+			keys.add(index);
+			comparator = comparator == null ? Comparator.comparing(row -> row[index], order) : comparator.thenComparing(row -> row[index], order);
+		}
+
+		SelectStatementBuilder shardStatement = statement.getMatchingStatement(select, null);
+		List<List<Tuple>> results = scatter(entityManager -> shardStatement.createQuery(entityManager, Tuple.class).getResultList());
+		checkCollation(results, keys);
+
+		Map<List<Object>, Object[]> groups = new LinkedHashMap<>();
+
+		results.stream().flatMap(List::stream).forEach(tuple -> {
+			List<Object> key = new ArrayList<>();
+
+			for (int i = 0; i < functions.size(); i++)
+				if (functions.get(i) == null)
+					key.add(tuple.get(i));
+
+			Object[] combined = groups.get(key);
+
+			if (combined == null) {
+				groups.put(key, tuple.toArray());
+				return;
+			}
+
+			for (int i = 0; i < functions.size(); i++)
+				if (functions.get(i) != null)
+					combined[i] = combine(functions.get(i), combined[i], tuple.get(i), collation);
+		});
+
+		List<Object[]> combined = new ArrayList<>(groups.values());
+
+		if (comparator != null)
+			combined.sort(comparator);
+
+		return page(combined.iterator(), statement.getFirstResult() != null ? statement.getFirstResult() : 0, statement.getMaxResults());
+	}
+
+	// a single ungrouped aggregate such as count(p) or max(p.createdOn)
+	public <T> T getAggregate(SelectStatementBuilder statement, Class<T> resultClass) {
+		if (!statement.getGroupBy().isEmpty() || split(statement.getSelect()).size() != 1)
+			throw new IllegalArgumentException("Expected a single ungrouped aggregate");
+
+		return getAggregateResultList(statement).stream()
+			.findFirst()
+			.map(row -> resultClass.cast(row[0]))
+			.orElse(null);
+	}
+
+	// an empty select list selects the root entity
+	private static List<String> getSelect(SelectStatementBuilder statement) {
+		List<String> select = split(statement.getSelect());
+
+		if (!select.isEmpty())
+			return select;
+
+		if (statement.getRootAlias() == null)
+			throw new IllegalArgumentException("Ordered results without a select list require an aliased root entity");
+
+		return List.of(statement.getRootAlias());
+	}
+
+	private static SelectStatementBuilder pushDown(SelectStatementBuilder statement, int firstResult, Integer maxResults) {
+		statement.firstResult(0);
+		return maxResults != null ? statement.maxResults((int) Math.min(Integer.MAX_VALUE, (long) firstResult + maxResults)) : statement;
+	}
+
+	private <T> List<T> scatter(Function<EntityManager, T> work) {
+		List<CompletableFuture<T>> futures = shards.stream()
+			.map(shard -> CompletableFuture.supplyAsync(() -> Transactions.read(shard, work), executor))
+			.collect(Collectors.toList());
+
+		try {
+			return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+		} catch (CompletionException e) {
+			futures.forEach(future -> future.cancel(true));
+
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+
+			throw e;
+		}
+	}
+
+	// rejects string keys up front rather than only once two of them happen to be compared
+	private void checkCollation(List<List<Tuple>> results, List<Integer> keys) {
+		if (collation == null && results.stream().flatMap(List::stream).anyMatch(tuple -> keys.stream().anyMatch(key -> tuple.get(key) instanceof String)))
+			throw missingCollation();
+	}
+
+	// k-way merge of lists that are each sorted by comparator; ties keep shard order
+	private static <T> Iterator<T> merge(List<List<T>> lists, Comparator<T> comparator) {
+		PriorityQueue<Cursor<T>> heads = new PriorityQueue<>(Math.max(1, lists.size()),
+			Comparator.<Cursor<T>, T>comparing(cursor -> cursor.head, comparator).thenComparingInt(cursor -> cursor.shard));
+
+		for (int i = 0; i < lists.size(); i++) {
+			Iterator<T> iterator = lists.get(i).iterator();
+
+			if (iterator.hasNext())
+				heads.add(new Cursor<>(i, iterator));
+		}
+
+		return new Iterator<T>() {
+
+			@Override
+			public boolean hasNext() {
+				return !heads.isEmpty();
+			}
+
+			@Override
+			public T next() {
+				Cursor<T> cursor = heads.poll();
+				T head = cursor.head;
+
+				if (cursor.iterator.hasNext()) {
+					cursor.head = cursor.iterator.next();
+					heads.add(cursor);
+				}
+
+				return head;
+			}
+		};
+	}
+
+	private static <T> List<T> page(Iterator<T> iterator, int firstResult, Integer maxResults) {
+		List<T> page = new ArrayList<>();
+
+		for (int i = 0; iterator.hasNext() && (maxResults == null || page.size() < maxResults); i++) {
+			T next = iterator.next();
+
+			if (i >= firstResult)
+				page.add(next);
+		}
+
+		return page;
+	}
+
+	private static Object combine(String function, Object left, Object right, Comparator<? super String> collation) {
+		if (left == null || right == null)
+			return left == null ? right : left;
+
+		switch (function) {
+			case "count":
+			case "sum":
+				return add((Number) left, (Number) right);
+			case "min":
+				return compare(left, right, collation) <= 0 ? left : right;
+			default:
+				return compare(left, right, collation) >= 0 ? left : right;
+		}
+	}
+
+	// strings only compare the way the shards do under their collation
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compare(Object left, Object right, Comparator<? super String> collation) {
+		if (!(left instanceof String))
+			return ((Comparable) left).compareTo(right);
+
+		if (collation == null)
+			throw missingCollation();
+
+		return collation.compare((String) left, (String) right);
+	}
+
+	private static Number add(Number left, Number right) {
+		if (left instanceof BigDecimal || right instanceof BigDecimal)
+			return toBigDecimal(left).add(toBigDecimal(right));
+
+		if (left instanceof Double || left instanceof Float || right instanceof Double || right instanceof Float)
+			return left.doubleValue() + right.doubleValue();
+
+		if (left instanceof BigInteger || right instanceof BigInteger)
+			return toBigInteger(left).add(toBigInteger(right));
+
+		return left.longValue() + right.longValue();
+	}
+
+	private static BigDecimal toBigDecimal(Number number) {
+		return number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString());
+	}
+
+	private static BigInteger toBigInteger(Number number) {
+		return number instanceof BigInteger ? (BigInteger) number : BigInteger.valueOf(number.longValue());
+	}
+
+	private static IllegalStateException missingCollation() {
+		return new IllegalStateException("Strings cannot be merged across shards without the shards' collation, see collation(Comparator)");
+	}
+
+	// select and order by items may hold several comma separated expressions each
+	private static List<String> split(Collection<String> items) {
+		List<String> split = new ArrayList<>();
+
+		for (String item : items) {
+			int depth = 0, start = 0;
+
+			for (int i = 0; i < item.length(); i++) {
+				char c = item.charAt(i);
+				depth += c == '(' ? 1 : c == ')' ? -1 : 0;
+
+				if (c == ',' && depth == 0) {
+					split.add(item.substring(start, i).trim());
+					start = i + 1;
+				}
+			}
+
+			split.add(item.substring(start).trim());
+		}
+
+		return split;
+	}
+
+	// string keys are compared by the configured collation, everything else by its natural order.
+	// nulls come first in ascending order unless the item says otherwise; the shards are told the same
+	// explicitly, since their own default differs between databases
+	private static class Order implements Comparator<Object> {
+
+		private final String expression;
+
+		private final boolean descending, nullsFirst;
+
+		private final Comparator<? super String> collation;
+
+		Order(String item, Comparator<? super String> collation) {
+			Matcher matcher = ORDER.matcher(item.trim());
+
+			if (!matcher.matches())
+				throw new IllegalArgumentException("Unsupported order by item: " + item);
+
+			expression = matcher.group(1);
+			descending = "desc".equalsIgnoreCase(matcher.group(2));
+			nullsFirst = matcher.group(3) != null ? "first".equalsIgnoreCase(matcher.group(3)) : !descending;
+			this.collation = collation;
+		}
+
+		@Override
+		public int compare(Object left, Object right) {
+			if (left == null || right == null)
+				return left == right ? 0 : (left == null) == nullsFirst ? -1 : 1;
+
+			int compared = ShardedExecutor.compare(left, right, collation);
+			return descending ? -compared : compared;
+		}
+
+		@Override
+		public String toString() {
+			return expression + (descending ? " desc" : "") + (nullsFirst ? " nulls first" : " nulls last");
+		}
+	}
+
+	private static class Cursor<T> {
+
+		private final int shard;
+
+		private final Iterator<T> iterator;
+
+		private T head;
+
+		Cursor(int shard, Iterator<T> iterator) {
+			this.shard = shard;
+			this.iterator = iterator;
+			this.head = iterator.next();
+		}
+	}
+}
@@ -1,479 +1,1389 @@
-package com.github.simplejpql;
-
-import static java.util.Collections.emptyList;
-import static java.util.Collections.emptyMap;
-import static java.util.Collections.emptySet;
-import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toMap;
-
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BinaryOperator;
-import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import jakarta.persistence.CacheRetrieveMode;
-import jakarta.persistence.CacheStoreMode;
-import jakarta.persistence.EntityGraph;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.FlushModeType;
-import jakarta.persistence.LockModeType;
-import jakarta.persistence.Query;
-import jakarta.persistence.TypedQuery;
-
-import org.apache.commons.lang3.StringUtils;
-
-import lombok.Getter;
-
-public abstract class StatementBuilder<SB extends StatementBuilder<SB>> {
-
-    private Integer firstResult, maxResults;
-    private FlushModeType flushMode;
-    private LockModeType lockMode;
-    private Map<String, Object> hints = new HashMap<>();
-    static final String PREFIX_PATTERN = "\\$[\\da-f]{12}"; 
-    
-    public Integer getFirstResult() {
-        return firstResult;
-    }
-
-    public Integer getMaxResults() {
-        return maxResults;
-    }
-
-    public FlushModeType getFlushMode() {
-        return flushMode;
-    }
-
-    public LockModeType getLockMode() {
-        return lockMode;
-    }
-
-    public Map<String, Object> getHints() {
-        return hints;
-    }
-
-    boolean isNotEmpty(Collection<?> collection) {
-        return !collection.isEmpty();
-    }
-
-    private static <T> BinaryOperator<T> throwingMerger() {
-        return (u,v) -> { throw new IllegalStateException(String.format("Duplicate key %s", u)); };
-    }
-
-    private static String replaceAllPrefixes(String query) {
-        Pattern pattern = Pattern.compile(PREFIX_PATTERN);
-        Matcher matcher = pattern.matcher(query);
-
-        StringBuffer translation = new StringBuffer();
-        int sequence = 1;
-
-        while (matcher.find()) {
-            matcher.appendReplacement(translation, "\\$" + sequence++);
-        }
-        
-        matcher.appendTail(translation);
-
-        return translation.toString();
-    }
-    
-    @SuppressWarnings("unchecked")
-    public SB firstResult(int firstResult) {
-        this.firstResult = firstResult;
-        return (SB) this;
-    }
-
-    @SuppressWarnings("unchecked")
-    public SB maxResults(int maxResults) {
-        this.maxResults = maxResults;
-        return (SB) this;
-    }
-
-    @SuppressWarnings("unchecked")
-    public SB flushMode(FlushModeType flushMode) {
-        this.flushMode = flushMode;
-        return (SB) this;
-    }
-
-    @SuppressWarnings("unchecked")
-    public SB lockMode(LockModeType lockMode) {
-        this.lockMode = lockMode;
-        return (SB) this;
-    }
-    
-    @SuppressWarnings("unchecked")
-    public SB hints(Map<String, Object> hints) {
-        getHints().putAll(Optional.ofNullable(hints).orElse(emptyMap()));
-        return (SB) this;
-    }
-
-    @SuppressWarnings("unchecked")
-    public SB hint(String key, Object value) {
-        getHints().put(key, value);
-        return (SB) this;
-    }
-    
-    public SB lockTimeout(Long lockTimeout) {
-        return hint("jakarta.persistence.lock.timeout", lockTimeout);
-    }
-    
-    public SB queryTimeout(Long queryTimeout) {
-        return hint("jakarta.persistence.query.timeout", queryTimeout);
-    }
-    
-    public SB cacheRetrieveMode(CacheRetrieveMode cacheRetrieveMode) {
-        return hint("jakarta.persistence.cache.retrieveMode", cacheRetrieveMode);
-    }
-    
-    public SB cacheStoreMode(CacheStoreMode cacheStoreMode) {
-        return hint("jakarta.persistence.cache.storeMode", cacheStoreMode);
-    }
-    
-    public SB loadGraph(EntityGraph<?> loadGraph) {
-        return hint("jakarta.persistence.loadgraph", loadGraph);
-    }
-    
-    public SB fetchGraph(EntityGraph<?> fetchGraph) {
-        return hint("jakarta.persistence.fetchgraph", fetchGraph);
-    }
-    
-    public abstract String toString();
-
-    public abstract Map<String, Object> getNamedParameters();
-
-    public static SelectStatementBuilder select(String...select) {
-        return select(Optional.ofNullable(select).map(Arrays::asList).orElse(emptyList()));
-    }
-    
-    public static SelectStatementBuilder select(Collection<String> select) {
-        return new SelectStatementBuilder(select);
-    }
-    
-    public static UpdateStatementBuilder update(String entityName) {
-        return new UpdateStatementBuilder(entityName);
-    }
-    
-    public static DeleteStatementBuilder delete() {
-        return new DeleteStatementBuilder();
-    }
-    
-    public Query createQuery(EntityManager entityManager) {
-        return prepareQuery(entityManager.createQuery(toString()));
-    }
-    
-    public <T> TypedQuery<T> createQuery(EntityManager entityManager, Class<T> resultClass) {
-        return prepareQuery(entityManager.createQuery(toString(), resultClass));
-    }
-
-    private <T extends Query> T prepareQuery(T query) {
-        setIfPresent(firstResult, query::setFirstResult);
-        setIfPresent(maxResults , query::setMaxResults);
-        setIfPresent(flushMode  , query::setFlushMode);
-        setIfPresent(lockMode   , query::setLockMode);
-        
-        getHints().entrySet()
-            .forEach(hint -> query.setHint(hint.getKey(), hint.getValue()));
-        
-        getNamedParameters().entrySet()
-            .forEach(parameter -> query.setParameter(parameter.getKey(), parameter.getValue()));
-        
-        return query;
-    }
-    
-    private <V> void setIfPresent(V value, Consumer<? super V> consumer) {
-        Optional.ofNullable(value).ifPresent(consumer);
-    }
-    
-    public static class SelectStatementBuilder extends StatementBuilder<SelectStatementBuilder> {
-
-        @Getter
-        private Set<String>
-            select = new LinkedHashSet<>(),
-            from = new LinkedHashSet<>(),
-            groupBy = new LinkedHashSet<>(),
-            orderBy = new LinkedHashSet<>();
-
-        @Getter
-        private Map<String, Predicate> associations = new LinkedHashMap<>();
-        
-        @Getter
-        private Predicate where, having;
-        
-        public SelectStatementBuilder(Collection<String> select) {
-            getSelect().addAll(Optional.ofNullable(select).orElse(emptySet()));
-        }
-
-        public SelectStatementBuilder from(Collection<String> from) {
-            getFrom().addAll(Optional.ofNullable(from).orElse(emptyList()));
-            return this;
-        }
-        
-        public SelectStatementBuilder from(String...from) {
-            return from(Optional.ofNullable(from).map(Arrays::asList).orElse(emptyList()));
-        }
-
-        public SelectStatementBuilder from(Class<?> entityClass, String alias) {
-            return from(Stream.of(entityClass.getName(), alias).collect(Collectors.joining(" ")));
-        }
-        
-        public SelectStatementBuilder associate(Map<String, Predicate> associations) {
-            getAssociations().putAll(Optional.ofNullable(associations).orElse(emptyMap()));
-            return this;
-        }
-
-        public SelectStatementBuilder associate(Collection<String> associations) {
-            return associate(Optional.ofNullable(associations).orElse(emptyList()).stream()
-                .collect(toMap(a -> a, a -> null, throwingMerger(), LinkedHashMap::new)));
-        }
-        
-        public SelectStatementBuilder associate(String association, Predicate predicate) {
-            
-            if (StringUtils.isNotBlank(association)) {
-
-                // remove the join type and then tokenize the rest
-                String[] fetch_path_alias = Pattern
-                    .compile("\\b(?:join|inner join|left join|left outer join)\\b", Pattern.CASE_INSENSITIVE)
-                    .matcher(association)
-                    .replaceFirst("")
-                    .trim()
-                    .split("\\s+");
-                
-                int length = fetch_path_alias.length;
-                boolean fetch = fetch_path_alias[0].equalsIgnoreCase("fetch");
-
-                //if alias appears to be missing
-                if (length == (fetch ? 2 : 1))
-                    association += " " + fetch_path_alias[fetch ? 1 : 0].split("\\.(?!.*\\.)")[1]; 
-
-                return associate(new MapBuilder<String, Predicate>().put(association, predicate).toMap());
-            }
-            
-            return this;
-        }
-        
-        public SelectStatementBuilder associate(String association) {
-            return associate(association, null);
-        }
-        
-        public SelectStatementBuilder innerJoin(String innerJoin, Predicate predicate) {
-            return StringUtils.isNotBlank(innerJoin) ? associate("inner join " + innerJoin, predicate) : this;
-        }
-        
-        public SelectStatementBuilder innerJoin(String innerJoin) {
-            return innerJoin(innerJoin, null);
-        }
-        
-        public SelectStatementBuilder leftJoin(String leftJoin, Predicate predicate) {
-            return StringUtils.isNotBlank(leftJoin) ? associate("left join " + leftJoin, predicate) : this;
-        }
-        
-        public SelectStatementBuilder leftJoin(String leftJoin) {
-            return leftJoin(leftJoin, null);
-        }
-        
-        public SelectStatementBuilder where(Predicate where) {
-            this.where = where;
-            return this;
-        }
-        
-        public SelectStatementBuilder groupBy(Collection<String> groupBy) {
-            getGroupBy().addAll(Optional.ofNullable(groupBy).orElse(emptyList()));
-            return this;
-        }
-        
-        public SelectStatementBuilder groupBy(String...groupBy) {
-            return groupBy(Optional.ofNullable(groupBy).map(Arrays::asList).orElse(emptyList()));
-        }
-        
-        public SelectStatementBuilder having(Predicate having) {
-            this.having = having;
-            return this;
-        }
-        
-        public SelectStatementBuilder orderBy(Collection<String> orderBy) {
-            getOrderBy().addAll(Optional.ofNullable(orderBy).orElse(emptyList()));
-            return this;
-        }
-        
-        public SelectStatementBuilder orderBy(String...orderBy) {
-            return orderBy(Optional.ofNullable(orderBy).map(Arrays::asList).orElse(emptyList()));
-        }
-
-        public String getSelectClause() {
-            return Optional.of(getSelect())
-                .filter(this::isNotEmpty)
-                .map(select -> "select " + select.stream().collect(joining(", ")))
-                .orElse(null);
-        }
-        
-        public String getFromClause() {
-            return Stream.of(
-                Optional.of(getFrom())
-                    .filter(this::isNotEmpty)
-                    .map(from -> "from " + from.stream().collect(joining(", ")))
-                    .orElse(null),
-                
-                getAssociations().entrySet()
-                    .stream()
-                    .map(e -> Optional.ofNullable(e.getValue())
-                        .map(predicate -> e.getKey() + " on " + predicate)
-                        .orElse(e.getKey()))
-                    .collect(joining("\n")))
-            .filter(StringUtils::isNotBlank)
-            .collect(joining("\n"));
-        }
-        
-        public String getWhereClause() {
-            return Optional.ofNullable(getWhere()).map(where -> "where " + where).orElse(null);
-        }
-        
-        public String getGroupByClause() {
-            return Optional.of(getGroupBy())
-                .filter(this::isNotEmpty)
-                .map(groupBy -> "group by " + groupBy.stream().collect(joining(", ")))
-                .orElse(null);
-        }
-        
-        public String getHavingClause() {
-            return Optional.ofNullable(getHaving()).map(having -> "having " + having).orElse(null);
-        }
-        
-        public String getOrderByClause() {
-            return Optional.of(getOrderBy())
-                .filter(this::isNotEmpty)
-                .map(orderBy -> "order by " + orderBy.stream().filter(Objects::nonNull).collect(joining(", ")))
-                .orElse(null);
-        }
-        
-        @Override
-        public String toString() {
-            return replaceAllPrefixes(
-            	Stream.of(
-	                getSelectClause(),
-	                getFromClause(),
-	                getWhereClause(),
-	                getGroupByClause(),
-	                getHavingClause(),
-	                getOrderByClause())
-	            .filter(StringUtils::isNotBlank)
-	            .collect(joining("\n")));
-        }
-
-        public Map<String, Object> getNamedParameters() {
-        	AtomicInteger i = new AtomicInteger(1);
-        	
-            return Stream.concat(getAssociations().values().stream(), Stream.of(getWhere(), getHaving()))
-                .filter(Objects::nonNull)
-                .flatMap(p -> p.getNamedParameters().entrySet().stream())
-            	.collect(toMap(e -> e.getKey().replaceAll(PREFIX_PATTERN,  "\\$" + i.getAndIncrement()), Map.Entry::getValue, throwingMerger(), LinkedHashMap::new));
-        }
-    }
-
-    public static class UpdateStatementBuilder extends StatementBuilder<UpdateStatementBuilder> {
-
-        private String entityName;
-        
-        private Map<String, Object> updateItems = new LinkedHashMap<>();
-        
-        private Predicate where;
-        
-        public UpdateStatementBuilder(String entityName) {
-            this.entityName = entityName;
-        }
-
-        public UpdateStatementBuilder set(Map<String, Object> updateItems) {
-            this.updateItems.putAll(Optional.ofNullable(updateItems).orElse(emptyMap()));
-            return this;
-        }
-        
-
-        public UpdateStatementBuilder set(String lhs, Object newValue) {
-            this.updateItems.put(lhs, newValue);
-            return this;
-        }
-        
-        public UpdateStatementBuilder where(Predicate where) {
-            this.where = where;
-            return this;            
-        }
-        
-        public String getUpdateClause() {
-            return Stream.of(
-                    "update " + entityName,
-                    "set " + updateItems.entrySet().stream()
-                        .map(updateItem -> updateItem.getKey() + " = :" + updateItem.getKey().replaceAll("[^A-Za-z0-9_$]", "_"))
-                        .collect(joining(", ")))
-                .collect(joining("\n"));
-        }
-        
-        public String getWhereClause() {
-            return where != null ? "where " + where : null;
-        }
-        
-        @Override
-        public String toString() {
-            return Stream.of(getUpdateClause(), getWhereClause()).filter(StringUtils::isNotBlank).collect(joining("\n"));
-        }
-
-        @Override
-        public Map<String, Object> getNamedParameters() {
-            return Stream.of(updateItems, Optional.ofNullable(where).map(Predicate::getNamedParameters).orElse(emptyMap()))
-                .flatMap(map -> map.entrySet().stream())
-                .collect(toMap(e -> e.getKey().replaceAll("[^A-Za-z0-9_$]", "_"), Map.Entry::getValue));
-        }
-    }
-
-    public static class DeleteStatementBuilder extends StatementBuilder<DeleteStatementBuilder> {
-
-        private String entityName;
-        
-        @Getter
-        private Predicate where;
-        
-        public DeleteStatementBuilder() {}
-
-        public DeleteStatementBuilder from(String entityName) {
-            this.entityName = entityName;
-            return this;            
-        }
-        
-        public DeleteStatementBuilder where(Predicate where) {
-            this.where = where;
-            return this;            
-        }
-        
-        public String getDeleteClause() {
-            return "delete from " + entityName;
-        }
-        
-        public String getWhereClause() {
-            return where != null ? "where " + where : null;
-        }
-        
-        @Override
-        public String toString() {
-            return replaceAllPrefixes(Stream.of(getDeleteClause(), getWhereClause()).filter(StringUtils::isNotBlank).collect(joining("\n")));
-        }
-
-        @Override
-        public Map<String, Object> getNamedParameters() {
-        	AtomicInteger i = new AtomicInteger(1);
-        	
-            return Stream.of(getWhere())
-                .filter(Objects::nonNull)
-                .flatMap(p -> p.getNamedParameters().entrySet().stream())
-            	.collect(toMap(e -> e.getKey().replaceAll(PREFIX_PATTERN,  "\\$" + i.getAndIncrement()), Map.Entry::getValue, throwingMerger(), LinkedHashMap::new));
-        }
-    }
+package com.github.simplejpql;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import jakarta.persistence.CacheRetrieveMode;
+import jakarta.persistence.CacheStoreMode;
+import jakarta.persistence.EntityGraph;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceUnitUtil;
+import jakarta.persistence.Query;
+import jakarta.persistence.Subgraph;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.PluralAttribute;
+import jakarta.persistence.metamodel.SingularAttribute;
+import jakarta.persistence.metamodel.Type;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.Getter;
+
+public abstract class StatementBuilder<SB extends StatementBuilder<SB>> {
+
+    private Integer firstResult, maxResults;
+    private FlushModeType flushMode;
+    private LockModeType lockMode;
+    private Map<String, Object> hints = new HashMap<>();
+    private volatile boolean frozen;
+    private String jpql;
+    private RenderSettings settings;
+    static final String PREFIX_PATTERN = "\\$[\\da-f]{12}"; 
+    static final int PREFIX_LENGTH = 13;
+    private static final Pattern PREFIX = Pattern.compile(PREFIX_PATTERN);
+    static final Long SKIP_LOCKED = -2L;
+    static final String QUERY_TIMEOUT = "jakarta.persistence.query.timeout";
+    
+    public Integer getFirstResult() {
+        return firstResult;
+    }
+
+    public Integer getMaxResults() {
+        return maxResults;
+    }
+
+    public FlushModeType getFlushMode() {
+        return flushMode;
+    }
+
+    public LockModeType getLockMode() {
+        return lockMode;
+    }
+
+    public Map<String, Object> getHints() {
+        return hints;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    boolean isNotEmpty(Collection<?> collection) {
+        return !collection.isEmpty();
+    }
+
+    private static <T> BinaryOperator<T> throwingMerger() {
+        return (u,v) -> { throw new IllegalStateException(String.format("Duplicate key %s", u)); };
+    }
+
+    private static String replaceAllPrefixes(String query) {
+        Matcher matcher = PREFIX.matcher(query);
+
+        StringBuffer translation = new StringBuffer();
+        int sequence = 1;
+
+        while (matcher.find()) {
+            matcher.appendReplacement(translation, "\\$" + sequence++);
+        }
+        
+        matcher.appendTail(translation);
+
+        return translation.toString();
+    }
+    
+    @SuppressWarnings("unchecked")
+    public SB firstResult(int firstResult) {
+        StatementBuilder<?> target = writable();
+        target.firstResult = firstResult;
+        return (SB) target;
+    }
+
+    @SuppressWarnings("unchecked")
+    public SB maxResults(int maxResults) {
+        StatementBuilder<?> target = writable();
+        target.maxResults = maxResults;
+        return (SB) target;
+    }
+
+    @SuppressWarnings("unchecked")
+    public SB flushMode(FlushModeType flushMode) {
+        StatementBuilder<?> target = writable();
+        target.flushMode = flushMode;
+        return (SB) target;
+    }
+
+    @SuppressWarnings("unchecked")
+    public SB lockMode(LockModeType lockMode) {
+        StatementBuilder<?> target = writable();
+        target.lockMode = lockMode;
+        return (SB) target;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public SB hints(Map<String, Object> hints) {
+        StatementBuilder<?> target = writable();
+        target.hints = writable(target.hints);
+        target.hints.putAll(Optional.ofNullable(hints).orElse(emptyMap()));
+        return (SB) target;
+    }
+
+    @SuppressWarnings("unchecked")
+    public SB hint(String key, Object value) {
+        StatementBuilder<?> target = writable();
+        target.hints = writable(target.hints);
+        target.hints.put(key, value);
+        return (SB) target;
+    }
+    
+    // the specification defines both timeouts as Integer milliseconds, providers reject a Long; longer ones are clamped
+    public SB lockTimeout(Long lockTimeout) {
+        return hint("jakarta.persistence.lock.timeout", Optional.ofNullable(lockTimeout).map(StatementBuilder::toMillis).orElse(null));
+    }
+    
+    public SB queryTimeout(Long queryTimeout) {
+        return hint(QUERY_TIMEOUT, Optional.ofNullable(queryTimeout).map(StatementBuilder::toMillis).orElse(null));
+    }
+
+    private static Integer toMillis(long timeout) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, timeout));
+    }
+    
+    public SB cacheRetrieveMode(CacheRetrieveMode cacheRetrieveMode) {
+        return hint("jakarta.persistence.cache.retrieveMode", cacheRetrieveMode);
+    }
+    
+    public SB cacheStoreMode(CacheStoreMode cacheStoreMode) {
+        return hint("jakarta.persistence.cache.storeMode", cacheStoreMode);
+    }
+    
+    public SB loadGraph(EntityGraph<?> loadGraph) {
+        return hint("jakarta.persistence.loadgraph", loadGraph);
+    }
+    
+    public SB fetchGraph(EntityGraph<?> fetchGraph) {
+        return hint("jakarta.persistence.fetchgraph", fetchGraph);
+    }
+    
+    public abstract String toString();
+
+    public abstract Map<String, Object> getNamedParameters();
+
+    // binds the parameters under the names getNamedParameters() gives them, without building that map.
+    // a frozen builder binds with the settings its text was rendered with, so names and values match it
+    final void bindParameters(BiConsumer<String, Object> binder) {
+        if (settings != null)
+            settings.run(() -> bindStatementParameters(binder));
+        else
+            bindStatementParameters(binder);
+    }
+
+    void bindStatementParameters(BiConsumer<String, Object> binder) {
+        getNamedParameters().forEach(binder);
+    }
+
+    // renames $<prefix>_x to $<n>_x in encounter order, the numbering toString() applies to the text
+    static BiConsumer<String, Object> sequenced(BiConsumer<String, Object> binder) {
+        int[] sequence = {1};
+        return (name, value) -> binder.accept(isPrefixed(name) ? "$" + sequence[0]++ + name.substring(PREFIX_LENGTH) : name, value);
+    }
+
+    private static boolean isPrefixed(String name) {
+        if (name.length() < PREFIX_LENGTH || name.charAt(0) != '$')
+            return false;
+
+        for (int i = 1; i < PREFIX_LENGTH; i++) {
+            char c = name.charAt(i);
+
+            if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f'))
+                return false;
+        }
+
+        return true;
+    }
+
+    // makes this builder immutable and caches its jpql; builder methods called on it from then on return a
+    // derived builder that shares every collection it does not change, so a frozen base can be a shared constant.
+    // the text is rendered once, with the case insensitivity, like and auto parameterization settings in effect
+    // at the time; parameters are bound with those settings too, whatever they have been changed to since
+    @SuppressWarnings("unchecked")
+    public SB freeze() {
+        if (!frozen) {
+            hints = Collections.unmodifiableMap(hints);
+            freezeState();
+            RenderSettings settings = RenderSettings.capture();
+            jpql = settings.call(this::toString);
+            this.settings = settings;
+            frozen = true;
+        }
+
+        return (SB) this;
+    }
+
+    void freezeState() {}
+
+    // a mutable builder sharing this one's (frozen) state
+    abstract SB derive();
+
+    @SuppressWarnings("unchecked")
+    SB writable() {
+        return frozen ? derive() : (SB) this;
+    }
+
+    <T extends StatementBuilder<?>> T share(T derived) {
+        StatementBuilder<?> target = derived;
+        target.firstResult = firstResult;
+        target.maxResults = maxResults;
+        target.flushMode = flushMode;
+        target.lockMode = lockMode;
+        target.hints = hints;
+        return derived;
+    }
+
+    String cached(Supplier<String> renderer) {
+        return jpql != null ? jpql : renderer.get();
+    }
+
+    // frozen collections are unmodifiable views, a derived builder copies one the first time it changes it
+    static <E> Set<E> writable(Set<E> set) {
+        return set instanceof LinkedHashSet ? set : new LinkedHashSet<>(set);
+    }
+
+    static <K, V> Map<K, V> writable(Map<K, V> map) {
+        return map instanceof HashMap ? map : new LinkedHashMap<>(map);
+    }
+
+    static <E> Set<E> frozen(Set<E> set) {
+        return set instanceof LinkedHashSet ? Collections.unmodifiableSet(set) : set;
+    }
+
+    static <K, V> Map<K, V> frozen(Map<K, V> map) {
+        return map instanceof HashMap ? Collections.unmodifiableMap(map) : map;
+    }
+
+    <T extends StatementBuilder<?>> T copyTo(T copy) {
+        StatementBuilder<?> target = copy;
+        target.firstResult = firstResult;
+        target.maxResults = maxResults;
+        target.flushMode = flushMode;
+        target.lockMode = lockMode;
+        target.hints.putAll(hints);
+        return copy;
+    }
+
+    public static SelectStatementBuilder select(String...select) {
+        return select(Optional.ofNullable(select).map(Arrays::asList).orElse(emptyList()));
+    }
+    
+    public static SelectStatementBuilder select(Collection<String> select) {
+        return new SelectStatementBuilder(select);
+    }
+    
+    public static SelectStatementBuilder select(Projection<?> projection) {
+        return select().project(projection);
+    }
+    
+    public static UpdateStatementBuilder update(String entityName) {
+        return new UpdateStatementBuilder(entityName);
+    }
+    
+    public static DeleteStatementBuilder delete() {
+        return new DeleteStatementBuilder();
+    }
+    
+    public Query createQuery(EntityManager entityManager) {
+        String jpql = toString();
+        PlanCacheAnalyzer.record(this, jpql);
+        return prepareQuery(entityManager.createQuery(jpql));
+    }
+    
+    public <T> TypedQuery<T> createQuery(EntityManager entityManager, Class<T> resultClass) {
+        String jpql = toString();
+        PlanCacheAnalyzer.record(this, jpql);
+        return prepareQuery(entityManager.createQuery(jpql, resultClass));
+    }
+
+    <T extends Query> T prepareQuery(T query) {
+        setIfPresent(firstResult, query::setFirstResult);
+        setIfPresent(maxResults , query::setMaxResults);
+        setIfPresent(flushMode  , query::setFlushMode);
+        setIfPresent(lockMode   , query::setLockMode);
+        
+        getHints().entrySet()
+            .forEach(hint -> query.setHint(hint.getKey(), hint.getValue()));
+        
+        Deadline.current().ifPresent(deadline -> query.setHint(QUERY_TIMEOUT, deadline.getQueryTimeout(Optional.ofNullable(getHints().get(QUERY_TIMEOUT))
+            .filter(Number.class::isInstance)
+            .map(timeout -> ((Number) timeout).intValue())
+            .orElse(null))));
+        
+        bindParameters((name, value) -> query.setParameter(name, toParameterType(query, name, value)));
+        
+        return query;
+    }
+    
+    // a string compared to an enum path, as auto parameterization lifts it from 'MOBILE', binds as the constant
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object toParameterType(Query query, String name, Object value) {
+        if (!(value instanceof String))
+            return value;
+        
+        Class<?> type = query.getParameter(name).getParameterType();
+        return type != null && type.isEnum() ? Enum.valueOf((Class) type, (String) value) : value;
+    }
+    
+    private <V> void setIfPresent(V value, Consumer<? super V> consumer) {
+        Optional.ofNullable(value).ifPresent(consumer);
+    }
+    
+    public static class SelectStatementBuilder extends StatementBuilder<SelectStatementBuilder> {
+
+        public enum FetchStrategy {
+            JOIN(null),
+            LOAD_GRAPH("jakarta.persistence.loadgraph"),
+            FETCH_GRAPH("jakarta.persistence.fetchgraph"),
+            SPLIT(null);
+
+            private final String hint;
+
+            FetchStrategy(String hint) {
+                this.hint = hint;
+            }
+        }
+
+        static final Pattern JOIN_PATTERN = Pattern.compile(
+            "^\\s*(?:inner\\s+|left\\s+(?:outer\\s+)?)?join\\s+(fetch\\s+)?(\\S+)(?:\\s+(?:as\\s+)?(\\S+))?\\s*$", Pattern.CASE_INSENSITIVE);
+
+        @Getter
+        private Set<String>
+            select = new LinkedHashSet<>(),
+            from = new LinkedHashSet<>(),
+            groupBy = new LinkedHashSet<>(),
+            orderBy = new LinkedHashSet<>(),
+            fetchPaths = new LinkedHashSet<>();
+
+        @Getter
+        private FetchStrategy fetchStrategy = FetchStrategy.JOIN;
+
+        @Getter
+        private Projection<?> projection;
+
+        @Getter
+        private Map<String, Predicate> associations = new LinkedHashMap<>();
+        
+        @Getter
+        private Predicate where, having;
+        
+        // facet name -> predicate, counted in the select clause by getFacetCounts
+        private Map<String, Predicate> facets = emptyMap();
+        
+        public SelectStatementBuilder(Collection<String> select) {
+            getSelect().addAll(Optional.ofNullable(select).orElse(emptySet()));
+        }
+
+        public SelectStatementBuilder project(Projection<?> projection) {
+            SelectStatementBuilder target = writable();
+            target.projection = projection;
+            return target;
+        }
+
+        public SelectStatementBuilder from(Collection<String> from) {
+            SelectStatementBuilder target = writable();
+            target.from = writable(target.from);
+            target.from.addAll(Optional.ofNullable(from).orElse(emptyList()));
+            return target;
+        }
+        
+        public SelectStatementBuilder from(String...from) {
+            return from(Optional.ofNullable(from).map(Arrays::asList).orElse(emptyList()));
+        }
+
+        public SelectStatementBuilder from(Class<?> entityClass, String alias) {
+            return from(Stream.of(entityClass.getName(), alias).collect(Collectors.joining(" ")));
+        }
+        
+        public SelectStatementBuilder associate(Map<String, Predicate> associations) {
+            SelectStatementBuilder target = writable();
+            target.associations = writable(target.associations);
+            target.associations.putAll(Optional.ofNullable(associations).orElse(emptyMap()));
+            return target;
+        }
+
+        public SelectStatementBuilder associate(Collection<String> associations) {
+            Map<String, Predicate> map = new LinkedHashMap<>();
+            Optional.ofNullable(associations).orElse(emptyList()).forEach(association -> map.put(association, null));
+            return associate(map);
+        }
+        
+        public SelectStatementBuilder associate(String association, Predicate predicate) {
+            
+            if (StringUtils.isNotBlank(association)) {
+
+                // remove the join type and then tokenize the rest
+                String[] fetch_path_alias = Pattern
+                    .compile("\\b(?:join|inner join|left join|left outer join)\\b", Pattern.CASE_INSENSITIVE)
+                    .matcher(association)
+                    .replaceFirst("")
+                    .trim()
+                    .split("\\s+");
+                
+                int length = fetch_path_alias.length;
+                boolean fetch = fetch_path_alias[0].equalsIgnoreCase("fetch");
+
+                //if alias appears to be missing
+                if (length == (fetch ? 2 : 1))
+                    association += " " + fetch_path_alias[fetch ? 1 : 0].split("\\.(?!.*\\.)")[1]; 
+
+                return associate(new MapBuilder<String, Predicate>().put(association, predicate).toMap());
+            }
+            
+            return this;
+        }
+        
+        public SelectStatementBuilder associate(String association) {
+            return associate(association, null);
+        }
+        
+        public SelectStatementBuilder innerJoin(String innerJoin, Predicate predicate) {
+            return StringUtils.isNotBlank(innerJoin) ? associate("inner join " + innerJoin, predicate) : this;
+        }
+        
+        public SelectStatementBuilder innerJoin(String innerJoin) {
+            return innerJoin(innerJoin, null);
+        }
+        
+        public SelectStatementBuilder leftJoin(String leftJoin, Predicate predicate) {
+            return StringUtils.isNotBlank(leftJoin) ? associate("left join " + leftJoin, predicate) : this;
+        }
+        
+        public SelectStatementBuilder leftJoin(String leftJoin) {
+            return leftJoin(leftJoin, null);
+        }
+        
+        public SelectStatementBuilder fetch(Collection<String> fetchPaths) {
+            SelectStatementBuilder target = writable();
+            target.fetchPaths = writable(target.fetchPaths);
+            target.fetchPaths.addAll(Optional.ofNullable(fetchPaths).orElse(emptyList()));
+            return target;
+        }
+
+        public SelectStatementBuilder fetch(String...fetchPaths) {
+            return fetch(Optional.ofNullable(fetchPaths).map(Arrays::asList).orElse(emptyList()));
+        }
+
+        public SelectStatementBuilder fetchStrategy(FetchStrategy fetchStrategy) {
+            SelectStatementBuilder target = writable();
+            target.fetchStrategy = Optional.ofNullable(fetchStrategy).orElse(FetchStrategy.JOIN);
+            return target;
+        }
+
+        public SelectStatementBuilder where(Predicate where) {
+            SelectStatementBuilder target = writable();
+            target.where = where;
+            return target;
+        }
+        
+        public SelectStatementBuilder groupBy(Collection<String> groupBy) {
+            SelectStatementBuilder target = writable();
+            target.groupBy = writable(target.groupBy);
+            target.groupBy.addAll(Optional.ofNullable(groupBy).orElse(emptyList()));
+            return target;
+        }
+        
+        public SelectStatementBuilder groupBy(String...groupBy) {
+            return groupBy(Optional.ofNullable(groupBy).map(Arrays::asList).orElse(emptyList()));
+        }
+        
+        public SelectStatementBuilder having(Predicate having) {
+            SelectStatementBuilder target = writable();
+            target.having = having;
+            return target;
+        }
+        
+        public SelectStatementBuilder orderBy(Collection<String> orderBy) {
+            SelectStatementBuilder target = writable();
+            target.orderBy = writable(target.orderBy);
+            target.orderBy.addAll(Optional.ofNullable(orderBy).orElse(emptyList()));
+            return target;
+        }
+        
+        public SelectStatementBuilder orderBy(String...orderBy) {
+            return orderBy(Optional.ofNullable(orderBy).map(Arrays::asList).orElse(emptyList()));
+        }
+
+        public String getSelectClause() {
+            // a kept join can repeat a root row, so each root is then counted once by its id
+            if (!facets.isEmpty() && !getAssociations().isEmpty() && getRootAlias() != null)
+                return "select " + facets.values().stream()
+                    .map(facet -> String.format("count(distinct case when %s then id(%s) end)", facet, getRootAlias()))
+                    .collect(joining(", "));
+
+            if (!facets.isEmpty())
+                return "select " + facets.values().stream()
+                    .map(facet -> String.format("sum(case when %s then 1 else 0 end)", facet))
+                    .collect(joining(", "));
+
+            if (getProjection() != null)
+                return "select " + getProjection().getSelection(getRootAlias());
+
+            return Optional.of(getSelect())
+                .filter(this::isNotEmpty)
+                .map(select -> "select " + select.stream().collect(joining(", ")))
+                .orElse(null);
+        }
+        
+        public String getFromClause() {
+            return Stream.of(
+                Optional.of(getFrom())
+                    .filter(this::isNotEmpty)
+                    .map(from -> "from " + from.stream().collect(joining(", ")))
+                    .orElse(null),
+                
+                getJoins().collect(joining("\n")))
+            .filter(StringUtils::isNotBlank)
+            .collect(joining("\n"));
+        }
+        
+        Stream<String> getJoins() {
+            Map<String, String> graphFetches = getGraphFetches();
+
+            return getEffectiveAssociations().entrySet()
+                .stream()
+                .filter(e -> !graphFetches.containsKey(e.getKey()))
+                .map(e -> Optional.ofNullable(e.getValue())
+                    .map(predicate -> e.getKey() + " on " + predicate)
+                    .orElse(e.getKey()));
+        }
+
+        // the declared associations plus the fetch paths, when those are rendered as joins
+        Map<String, Predicate> getEffectiveAssociations() {
+            if (getFetchPaths().isEmpty() || getFetchStrategy().hint != null)
+                return getAssociations();
+
+            Map<String, Predicate> associations = new LinkedHashMap<>(getAssociations());
+            getFetchPathJoins().forEach(join -> associations.put(join, null));
+            return associations;
+        }
+
+        Stream<String> getFetchPathJoins() {
+            if (getFetchPaths().isEmpty())
+                return Stream.empty();
+
+            String rootAlias = Optional.ofNullable(getRootAlias())
+                .orElseThrow(() -> new IllegalStateException("Fetch paths require an aliased from clause"));
+
+            // every intermediate path needs its own join so the next segment has an alias to hang off
+            Set<String> paths = new LinkedHashSet<>();
+            getFetchPaths().forEach(path -> {
+                for (int dot = path.indexOf('.'); dot > 0; dot = path.indexOf('.', dot + 1))
+                    paths.add(path.substring(0, dot));
+
+                paths.add(path);
+            });
+
+            return paths.stream().map(path -> {
+                int dot = path.lastIndexOf('.');
+                String parent = dot < 0 ? rootAlias : getFetchAlias(rootAlias, path.substring(0, dot));
+
+                return String.format("left join fetch %s.%s %s", parent, path.substring(dot + 1), getFetchAlias(rootAlias, path));
+            });
+        }
+
+        private static String getFetchAlias(String rootAlias, String path) {
+            return rootAlias + "_" + path.replace('.', '_');
+        }
+
+        String getRootAlias() {
+            return getFrom().stream()
+                .findFirst()
+                .map(from -> from.trim().split("\\s+"))
+                .filter(tokens -> tokens.length > 1)
+                .map(tokens -> tokens[tokens.length - 1])
+                .orElse(null);
+        }
+
+        static class Join {
+            final String association, owner, attribute, alias, path;
+            final Predicate predicate;
+            final boolean fetch;
+
+            Join(String association, Predicate predicate, boolean fetch, String owner, String attribute, String alias, String path) {
+                this.association = association;
+                this.predicate = predicate;
+                this.fetch = fetch;
+                this.owner = owner;
+                this.attribute = attribute;
+                this.alias = alias;
+                this.path = path;
+            }
+        }
+
+        // path is the attribute path relative to the root entity, or null when the join does not hang off the root
+        List<Join> getParsedJoins() {
+            List<Join> joins = new ArrayList<>();
+            Map<String, String> paths = new HashMap<>();
+            Optional.ofNullable(getRootAlias()).ifPresent(alias -> paths.put(alias, ""));
+
+            getEffectiveAssociations().forEach((association, predicate) -> {
+                Matcher matcher = JOIN_PATTERN.matcher(association);
+
+                if (!matcher.matches() || matcher.group(2).indexOf('.') < 0)
+                    return;
+
+                String expression = matcher.group(2), alias = matcher.group(3);
+                int dot = expression.indexOf('.');
+                String owner = expression.substring(0, dot), attribute = expression.substring(dot + 1);
+                String path = Optional.ofNullable(paths.get(owner))
+                    .map(parent -> (parent.isEmpty() ? "" : parent + ".") + attribute)
+                    .orElse(null);
+
+                if (path != null && alias != null)
+                    paths.put(alias, path);
+
+                joins.add(new Join(association, predicate, matcher.group(1) != null, owner, attribute, alias, path));
+            });
+
+            return joins;
+        }
+
+        // fetch join association -> attribute path relative to the root entity, for joins a graph can replace
+        Map<String, String> getGraphFetches() {
+            Map<String, String> graphFetches = new LinkedHashMap<>();
+
+            if (getFetchStrategy().hint != null)
+                getParsedJoins().stream()
+                    .filter(join -> join.fetch && join.predicate == null && join.path != null)
+                    .forEach(join -> graphFetches.put(join.association, join.path));
+
+            return graphFetches;
+        }
+
+        public Set<String> getGraphPaths() {
+            Set<String> graphPaths = new LinkedHashSet<>(getGraphFetches().values());
+            graphPaths.addAll(getFetchPaths());
+            return graphPaths;
+        }
+
+        Class<?> getRootType(EntityManager entityManager) {
+            String entityName = getFrom().stream()
+                .findFirst()
+                .map(from -> from.trim().split("\\s+")[0])
+                .orElseThrow(() -> new IllegalStateException("from clause is empty"));
+
+            return entityManager.getMetamodel().getEntities().stream()
+                .filter(entity -> entity.getName().equals(entityName) || entity.getJavaType().getName().equals(entityName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown entity: " + entityName))
+                .getJavaType();
+        }
+
+        public EntityGraph<?> createEntityGraph(EntityManager entityManager) {
+            EntityGraph<?> entityGraph = entityManager.createEntityGraph(getRootType(entityManager));
+            Map<String, Subgraph<?>> subgraphs = new HashMap<>();
+            Set<String> graphPaths = getGraphPaths();
+
+            graphPaths.stream()
+                .filter(path -> path.indexOf('.') > 0)
+                .forEach(path -> getSubgraph(entityGraph, subgraphs, path.substring(0, path.lastIndexOf('.'))));
+
+            graphPaths.stream()
+                .filter(path -> !subgraphs.containsKey(path))
+                .forEach(path -> {
+                    int dot = path.lastIndexOf('.');
+
+                    if (dot < 0)
+                        entityGraph.addAttributeNodes(path);
+                    else
+                        subgraphs.get(path.substring(0, dot)).addAttributeNodes(path.substring(dot + 1));
+                });
+
+            return entityGraph;
+        }
+
+        private static Subgraph<?> getSubgraph(EntityGraph<?> entityGraph, Map<String, Subgraph<?>> subgraphs, String path) {
+            Subgraph<?> subgraph = subgraphs.get(path);
+
+            if (subgraph == null) {
+                int dot = path.lastIndexOf('.');
+                subgraph = dot < 0
+                    ? entityGraph.addSubgraph(path)
+                    : getSubgraph(entityGraph, subgraphs, path.substring(0, dot)).addSubgraph(path.substring(dot + 1));
+                subgraphs.put(path, subgraph);
+            }
+
+            return subgraph;
+        }
+
+        @Override
+        public Query createQuery(EntityManager entityManager) {
+            LikePatterns.check(this);
+            return applyEntityGraph(entityManager, super.createQuery(entityManager));
+        }
+
+        @Override
+        public <T> TypedQuery<T> createQuery(EntityManager entityManager, Class<T> resultClass) {
+            LikePatterns.check(this);
+            return applyEntityGraph(entityManager, super.createQuery(entityManager, resultClass));
+        }
+
+        public SelectStatementBuilder copy() {
+            return copy(getSelect()).project(getProjection());
+        }
+
+        // a copy selecting something else from the same rows
+        SelectStatementBuilder copy(Collection<String> select) {
+            return copy(select, getOrderBy());
+        }
+
+        SelectStatementBuilder copy(Collection<String> select, Collection<String> orderBy) {
+            return copyTo(new SelectStatementBuilder(select))
+                .from(getFrom())
+                .associate(getAssociations())
+                .fetch(getFetchPaths())
+                .fetchStrategy(getFetchStrategy())
+                .where(getWhere())
+                .groupBy(getGroupBy())
+                .having(getHaving())
+                .orderBy(orderBy)
+                .withFacets(facets);
+        }
+
+        private SelectStatementBuilder withFacets(Map<String, Predicate> facets) {
+            this.facets = facets.isEmpty() ? facets : new LinkedHashMap<>(facets);
+            return this;
+        }
+
+        @Override
+        SelectStatementBuilder derive() {
+            SelectStatementBuilder derived = share(new SelectStatementBuilder(null));
+            derived.select = select;
+            derived.from = from;
+            derived.groupBy = groupBy;
+            derived.orderBy = orderBy;
+            derived.fetchPaths = fetchPaths;
+            derived.fetchStrategy = fetchStrategy;
+            derived.projection = projection;
+            derived.associations = associations;
+            derived.where = where;
+            derived.having = having;
+            derived.facets = facets;
+            return derived;
+        }
+
+        @Override
+        void freezeState() {
+            select = frozen(select);
+            from = frozen(from);
+            groupBy = frozen(groupBy);
+            orderBy = frozen(orderBy);
+            fetchPaths = frozen(fetchPaths);
+            associations = frozen(associations);
+            facets = frozen(facets);
+        }
+
+        // SPLIT only applies here; createQuery renders every fetch join into the one query
+        public <T> List<T> getResultList(EntityManager entityManager, Class<T> resultClass) {
+            List<Join> splitFetches = getFetchStrategy() == FetchStrategy.SPLIT ? getSplitFetches(entityManager) : emptyList();
+
+            if (splitFetches.isEmpty())
+                return createQuery(entityManager, resultClass).getResultList();
+
+            // an inner fetch join also decides which roots match, so it stays on the root query as a plain join,
+            // along with the split joins it hangs off. the roots are then selected distinct, as the joins multiply them
+            Set<String> keptAliases = new HashSet<>();
+            List<Join> keptJoins = new ArrayList<>();
+
+            for (int i = splitFetches.size() - 1; i >= 0; i--) {
+                Join join = splitFetches.get(i);
+
+                if (!join.association.trim().toLowerCase().startsWith("left") || (join.alias != null && keptAliases.contains(join.alias))) {
+                    keptJoins.add(0, join);
+                    keptAliases.add(join.owner);
+                }
+            }
+
+            Map<String, Predicate> rootAssociations = new LinkedHashMap<>();
+            getEffectiveAssociations().forEach((association, predicate) -> {
+                Optional<Join> split = splitFetches.stream().filter(join -> join.association.equals(association)).findFirst();
+
+                if (split.isEmpty())
+                    rootAssociations.put(association, predicate);
+                else if (keptJoins.contains(split.get()))
+                    rootAssociations.put(association.replaceFirst("(?i)\\bjoin\\s+fetch\\b", "join"), predicate);
+            });
+
+            List<String> select = new ArrayList<>(getSelect());
+            boolean distinct = !keptJoins.isEmpty() && getProjection() == null && select.size() == 1 && !select.get(0).trim().toLowerCase().startsWith("distinct ");
+
+            SelectStatementBuilder root = (distinct ? copy(List.of("distinct " + select.get(0).trim())) : copy()).fetchStrategy(FetchStrategy.JOIN);
+            root.getFetchPaths().clear();
+            root.getAssociations().clear();
+            root.associate(rootAssociations);
+
+            List<T> results = root.createQuery(entityManager, resultClass).getResultList();
+
+            if (results.isEmpty())
+                return results;
+
+            PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+            List<Object> ids = results.stream().map(persistenceUnitUtil::getIdentifier).distinct().collect(Collectors.toList());
+
+            EntityType<?> rootType = entityManager.getMetamodel().entity(getRootType(entityManager));
+            String id = getRootAlias() + "." + rootType.getId(rootType.getIdType().getJavaType()).getName();
+
+            Map<String, Join> joinsByAlias = getParsedJoins().stream()
+                .filter(join -> join.alias != null)
+                .collect(toMap(join -> join.alias, join -> join, throwingMerger(), LinkedHashMap::new));
+
+            // the fetched collections are attached to the owners already managed by the persistence context.
+            // the ids are chunked to stay within the database's limits on parameters and in lists
+            for (int i = 0; i < ids.size(); i += MultiGet.DEFAULT_CHUNK_SIZE) {
+                List<Object> chunk = ids.subList(i, Math.min(i + MultiGet.DEFAULT_CHUNK_SIZE, ids.size()));
+
+                splitFetches.forEach(fetch -> StatementBuilder
+                    .select("distinct " + fetch.owner)
+                    .from(getFrom().iterator().next())
+                    .associate(getOwnerJoins(fetch.owner, joinsByAlias))
+                    .associate(new MapBuilder<String, Predicate>().put(fetch.association, null).toMap())
+                    .where(Operator.in(id, chunk))
+                    .hints(getHints())
+                    .createQuery(entityManager)
+                    .getResultList());
+            }
+
+            return results;
+        }
+
+        // the rows this statement matches under another select list, without fetching, ordering, paging or locking.
+        // entity graph hints go too: a count or a constant has no entity for the graph to apply to.
+        // left fetch joins only load data and are dropped unless something kept refers to their alias; the other
+        // fetch joins can filter the roots, so they stay as plain joins
+        SelectStatementBuilder getMatchingStatement(Collection<String> select, Collection<? extends Predicate> references) {
+            StringBuilder referenced = new StringBuilder();
+            Optional.ofNullable(select).ifPresent(items -> items.forEach(item -> referenced.append(item).append(' ')));
+            Optional.ofNullable(references).ifPresent(predicates -> predicates.forEach(predicate -> referenced.append(predicate).append(' ')));
+            Stream.of(getWhere(), getHaving()).filter(Objects::nonNull).forEach(predicate -> referenced.append(predicate).append(' '));
+            getGroupBy().forEach(groupBy -> referenced.append(groupBy).append(' '));
+
+            // walked backwards so a join hanging off a fetched alias keeps that fetch join too
+            List<String> joins = new ArrayList<>(getAssociations().keySet());
+            Map<String, String> kept = new HashMap<>();
+
+            for (int i = joins.size() - 1; i >= 0; i--) {
+                String association = joins.get(i);
+                Matcher matcher = JOIN_PATTERN.matcher(association);
+
+                if (matcher.matches() && matcher.group(1) != null) {
+                    String alias = matcher.group(3);
+                    boolean left = association.trim().toLowerCase().startsWith("left");
+
+                    if (left && (alias == null || !Pattern.compile("\\b" + Pattern.quote(alias) + "\\.").matcher(referenced).find()))
+                        continue;
+                }
+
+                kept.put(association, association.replaceFirst("(?i)\\bjoin\\s+fetch\\b", "join"));
+                referenced.append(association).append(' ');
+                Optional.ofNullable(getAssociations().get(association)).ifPresent(on -> referenced.append(on).append(' '));
+            }
+
+            Map<String, Predicate> associations = new LinkedHashMap<>();
+            getAssociations().forEach((association, predicate) -> {
+                if (kept.containsKey(association))
+                    associations.put(kept.get(association), predicate);
+            });
+
+            SelectStatementBuilder statement = copyTo(new SelectStatementBuilder(select))
+                .from(getFrom())
+                .associate(associations)
+                .where(getWhere())
+                .groupBy(getGroupBy())
+                .having(getHaving());
+            StatementBuilder<?> target = statement;
+            target.firstResult = null;
+            target.maxResults = null;
+            target.lockMode = null;
+            target.hints.remove(FetchStrategy.LOAD_GRAPH.hint);
+            target.hints.remove(FetchStrategy.FETCH_GRAPH.hint);
+            return statement;
+        }
+
+        // the statement counting every facet among the rows this one selects, in a single pass
+        SelectStatementBuilder getFacetStatement(Map<String, ? extends Predicate> facets) {
+            if (!getGroupBy().isEmpty())
+                throw new IllegalStateException("Facets cannot be counted over a grouped statement");
+
+            SelectStatementBuilder statement = getMatchingStatement(null, facets.values());
+            statement.facets = new LinkedHashMap<>(facets);
+            return statement;
+        }
+
+        // one constant per matching row, or the select list itself when distinct decides what a row is
+        SelectStatementBuilder getProbeStatement(int maxResults) {
+            boolean distinct = getProjection() == null && getSelect().stream()
+                .findFirst()
+                .filter(select -> select.trim().toLowerCase().startsWith("distinct "))
+                .isPresent();
+
+            if (distinct)
+                return getMatchingStatement(getSelect(), null).maxResults(maxResults);
+
+            // a kept join can repeat a root row, so the roots themselves are made distinct
+            SelectStatementBuilder statement = getMatchingStatement(List.of("1"), null);
+
+            if (!statement.getAssociations().isEmpty() && getGroupBy().isEmpty() && getRootAlias() != null)
+                statement = getMatchingStatement(List.of("distinct " + getRootAlias()), null);
+
+            return statement.maxResults(maxResults);
+        }
+
+        // stops at the first matching row instead of counting them all
+        public boolean exists(EntityManager entityManager) {
+            return !getProbeStatement(1).createQuery(entityManager).getResultList().isEmpty();
+        }
+
+        // the number of matching rows, but no more than limit, for "more than n" checks
+        public long countUpTo(EntityManager entityManager, int limit) {
+            if (limit <= 0)
+                throw new IllegalArgumentException("limit must be positive");
+
+            return getProbeStatement(limit).createQuery(entityManager).getResultList().size();
+        }
+
+        public Map<String, Long> getFacetCounts(EntityManager entityManager, Map<String, ? extends Predicate> facets) {
+            Map<String, Long> counts = new LinkedHashMap<>();
+
+            if (facets.isEmpty())
+                return counts;
+
+            Tuple tuple = getFacetStatement(facets).createQuery(entityManager, Tuple.class).getSingleResult();
+            List<String> names = new ArrayList<>(facets.keySet());
+
+            for (int i = 0; i < names.size(); i++)
+                counts.put(names.get(i), Optional.ofNullable((Number) tuple.get(i)).map(Number::longValue).orElse(0L));
+
+            return counts;
+        }
+
+        public <T> TypedQuery<T> createClaimQuery(EntityManager entityManager, Class<T> resultClass, int batchSize) {
+            return copy()
+                .lockMode(LockModeType.PESSIMISTIC_WRITE)
+                .lockTimeout(SKIP_LOCKED)
+                .maxResults(batchSize)
+                .createQuery(entityManager, resultClass);
+        }
+        
+        // claims up to batchSize rows that no other transaction holds a lock on; requires an active transaction
+        public <T> List<T> claim(EntityManager entityManager, Class<T> resultClass, int batchSize, Consumer<? super T> mark) {
+            List<T> claimed = createClaimQuery(entityManager, resultClass, batchSize).getResultList();
+            
+            if (mark != null && !claimed.isEmpty()) {
+                claimed.forEach(mark);
+                entityManager.flush();
+            }
+            
+            return claimed;
+        }
+        
+        public <T> List<T> claim(EntityManager entityManager, Class<T> resultClass, int batchSize) {
+            return claim(entityManager, resultClass, batchSize, null);
+        }
+
+        public <T> Stream<T> getResultStream(EntityManager entityManager, Projection<T> projection) {
+            SelectStatementBuilder builder = projection == getProjection() ? this : copy().project(projection);
+
+            return projection.getMode() == Projection.Mode.TUPLE
+                ? builder.createQuery(entityManager, Tuple.class).getResultStream().map(projection::toDto)
+                : builder.createQuery(entityManager, projection.getType()).getResultStream();
+        }
+
+        // collection fetch joins beyond the first, plus any fetch join that hangs off one of them
+        List<Join> getSplitFetches(EntityManager entityManager) {
+            ManagedType<?> rootType = entityManager.getMetamodel().entity(getRootType(entityManager));
+            List<Join> splitFetches = new ArrayList<>();
+            Set<String> splitAliases = new HashSet<>();
+            boolean collectionFetched = false;
+
+            for (Join join : getParsedJoins()) {
+                if (!join.fetch || join.path == null)
+                    continue;
+
+                boolean collection = isCollection(rootType, join.path);
+
+                if (splitAliases.contains(join.owner) || (collection && collectionFetched)) {
+                    splitFetches.add(join);
+                    Optional.ofNullable(join.alias).ifPresent(splitAliases::add);
+                } else if (collection) {
+                    collectionFetched = true;
+                }
+            }
+
+            return splitFetches;
+        }
+
+        private static boolean isCollection(ManagedType<?> type, String path) {
+            Attribute<?, ?> attribute = null;
+
+            for (String name : path.split("\\.")) {
+                if (type == null)
+                    throw new IllegalArgumentException("Invalid attribute path: " + path);
+
+                attribute = type.getAttribute(name);
+                Type<?> attributeType = attribute instanceof PluralAttribute
+                    ? ((PluralAttribute<?, ?, ?>) attribute).getElementType()
+                    : ((SingularAttribute<?, ?>) attribute).getType();
+                type = attributeType instanceof ManagedType ? (ManagedType<?>) attributeType : null;
+            }
+
+            return attribute.isCollection();
+        }
+
+        private static Map<String, Predicate> getOwnerJoins(String owner, Map<String, Join> joinsByAlias) {
+            LinkedList<String> joins = new LinkedList<>();
+
+            for (Join join = joinsByAlias.get(owner); join != null; join = joinsByAlias.get(join.owner))
+                joins.addFirst(String.format("left join %s.%s %s", join.owner, join.attribute, join.alias));
+
+            Map<String, Predicate> ownerJoins = new LinkedHashMap<>();
+            joins.forEach(join -> ownerJoins.put(join, null));
+            return ownerJoins;
+        }
+
+        private <T extends Query> T applyEntityGraph(EntityManager entityManager, T query) {
+            if (getFetchStrategy().hint != null && !getGraphPaths().isEmpty())
+                query.setHint(getFetchStrategy().hint, createEntityGraph(entityManager));
+
+            return query;
+        }
+
+        public String getWhereClause() {
+            return Optional.ofNullable(getWhere()).map(where -> "where " + where).orElse(null);
+        }
+        
+        public String getGroupByClause() {
+            return Optional.of(getGroupBy())
+                .filter(this::isNotEmpty)
+                .map(groupBy -> "group by " + groupBy.stream().collect(joining(", ")))
+                .orElse(null);
+        }
+        
+        public String getHavingClause() {
+            return Optional.ofNullable(getHaving()).map(having -> "having " + having).orElse(null);
+        }
+        
+        public String getOrderByClause() {
+            return Optional.of(getOrderBy())
+                .filter(this::isNotEmpty)
+                .map(orderBy -> "order by " + orderBy.stream().filter(Objects::nonNull).collect(joining(", ")))
+                .orElse(null);
+        }
+        
+        @Override
+        public String toString() {
+            return cached(() -> replaceAllPrefixes(render()));
+        }
+
+        // rendered with the predicates' own parameter prefixes, so an enclosing statement can sequence them
+        String render() {
+            return render(true);
+        }
+
+        // as a subquery of in or exists, where order by is ignored or rejected; paging never reaches the text
+        String renderSubquery() {
+            return render(false);
+        }
+
+        private String render(boolean ordered) {
+            return Stream.of(
+                    getSelectClause(),
+                    getFromClause(),
+                    getWhereClause(),
+                    getGroupByClause(),
+                    getHavingClause(),
+                    ordered ? getOrderByClause() : null)
+                .filter(StringUtils::isNotBlank)
+                .collect(joining("\n"));
+        }
+
+        Map<String, Object> getPrefixedNamedParameters() {
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            
+            forEachPrefixedParameter((name, value) -> {
+                if (parameters.containsKey(name))
+                    throw new IllegalStateException(String.format("Duplicate key %s", name));
+                
+                parameters.put(name, value);
+            });
+            
+            return parameters;
+        }
+
+        void forEachPrefixedParameter(BiConsumer<String, Object> consumer) {
+            facets.values().forEach(facet -> facet.forEachParameter(consumer));
+            getAssociations().values().forEach(association -> Optional.ofNullable(association).ifPresent(p -> p.forEachParameter(consumer)));
+            Optional.ofNullable(getWhere()).ifPresent(where -> where.forEachParameter(consumer));
+            Optional.ofNullable(getHaving()).ifPresent(having -> having.forEachParameter(consumer));
+        }
+
+        @Override
+        void bindStatementParameters(BiConsumer<String, Object> binder) {
+            forEachPrefixedParameter(sequenced(binder));
+        }
+
+        public Map<String, Object> getNamedParameters() {
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            bindParameters(parameters::put);
+            return parameters;
+        }
+    }
+
+    public static class UpdateStatementBuilder extends StatementBuilder<UpdateStatementBuilder> {
+
+        @Getter
+        private String entityName;
+        
+        @Getter
+        private Map<String, Object> updateItems = new LinkedHashMap<>();
+        
+        @Getter
+        private Predicate where;
+        
+        @Getter
+        private String keyProperty;
+        
+        @Getter
+        private Map<Object, Map<String, Object>> keyedItems = new LinkedHashMap<>();
+        
+        public UpdateStatementBuilder(String entityName) {
+            this.entityName = entityName;
+        }
+
+        public UpdateStatementBuilder set(Map<String, Object> updateItems) {
+            UpdateStatementBuilder target = writable();
+            target.updateItems = writable(target.updateItems);
+            target.updateItems.putAll(Optional.ofNullable(updateItems).orElse(emptyMap()));
+            return target;
+        }
+        
+
+        public UpdateStatementBuilder set(String lhs, Object newValue) {
+            UpdateStatementBuilder target = writable();
+            target.updateItems = writable(target.updateItems);
+            target.updateItems.put(lhs, newValue);
+            return target;
+        }
+        
+        // assigns per-row values: key -> (lhs -> new value), rendered as one case expression per lhs
+        public UpdateStatementBuilder setByKey(String keyProperty, Map<?, ? extends Map<String, ?>> keyedItems) {
+            UpdateStatementBuilder target = writable();
+            target.keyProperty = keyProperty;
+            target.keyedItems = writable(target.keyedItems);
+            Optional.ofNullable(keyedItems).orElse(emptyMap())
+                .forEach((key, items) -> target.keyedItems.compute(key, (k, existing) -> {
+                    Map<String, Object> merged = existing != null ? writable(existing) : new LinkedHashMap<>();
+                    merged.putAll(items);
+                    return merged;
+                }));
+            return target;
+        }
+        
+        public UpdateStatementBuilder where(Predicate where) {
+            UpdateStatementBuilder target = writable();
+            target.where = where;
+            return target;            
+        }
+
+        @Override
+        UpdateStatementBuilder derive() {
+            UpdateStatementBuilder derived = share(new UpdateStatementBuilder(entityName));
+            derived.updateItems = updateItems;
+            derived.where = where;
+            derived.keyProperty = keyProperty;
+            derived.keyedItems = keyedItems;
+            return derived;
+        }
+
+        @Override
+        void freezeState() {
+            updateItems = frozen(updateItems);
+
+            if (keyedItems instanceof HashMap)
+                keyedItems.replaceAll((key, items) -> frozen(items));
+
+            keyedItems = frozen(keyedItems);
+        }
+        
+        public String getUpdateClause() {
+            return Stream.of(
+                    "update " + entityName,
+                    "set " + Stream.concat(
+                        updateItems.entrySet().stream()
+                            .map(updateItem -> updateItem.getKey() + " = :" + updateItem.getKey().replaceAll("[^A-Za-z0-9_$]", "_")),
+                        getKeyedUpdateItems())
+                        .collect(joining(", ")))
+                .collect(joining("\n"));
+        }
+        
+        private Stream<String> getKeyedUpdateItems() {
+            List<Object> keys = new ArrayList<>(keyedItems.keySet());
+            
+            return keyedItems.values().stream()
+                .flatMap(items -> items.keySet().stream())
+                .distinct()
+                .map(lhs -> String.format("%s = case %s %s else %s end", lhs, keyProperty, IntStream.range(0, keys.size())
+                    .filter(i -> keyedItems.get(keys.get(i)).containsKey(lhs))
+                    .mapToObj(i -> String.format("when :%s then :%s", getKeyParameterName(i), getKeyedParameterName(lhs, i)))
+                    .collect(joining(" ")), lhs));
+        }
+        
+        private static String getKeyParameterName(int index) {
+            return "$key_" + (index + 1);
+        }
+        
+        private static String getKeyedParameterName(String lhs, int index) {
+            return "$set_" + lhs.replaceAll("[^A-Za-z0-9_$]", "_") + "_" + (index + 1);
+        }
+        
+        public String getWhereClause() {
+            String keyRestriction = keyedItems.isEmpty() ? null : keyProperty + " in (:$keys)";
+            
+            if (where == null)
+                return keyRestriction != null ? "where " + keyRestriction : null;
+            
+            return keyRestriction != null ? String.format("where (%s) and %s", where, keyRestriction) : "where " + where;
+        }
+        
+        public List<UpdateStatementBuilder> split(int chunkSize) {
+            if (chunkSize < 1)
+                throw new IllegalArgumentException("chunkSize must be positive");
+
+            if (keyedItems.size() <= chunkSize)
+                return List.of(this);
+            
+            List<Object> keys = new ArrayList<>(keyedItems.keySet());
+            List<UpdateStatementBuilder> chunks = new ArrayList<>();
+            
+            for (int i = 0; i < keys.size(); i += chunkSize) {
+                UpdateStatementBuilder chunk = copyTo(new UpdateStatementBuilder(entityName)).set(updateItems).where(where);
+                chunk.keyProperty = keyProperty;
+                keys.subList(i, Math.min(i + chunkSize, keys.size())).forEach(key -> chunk.keyedItems.put(key, keyedItems.get(key)));
+                chunks.add(chunk);
+            }
+            
+            return chunks;
+        }
+        
+        public int executeUpdate(EntityManager entityManager, int chunkSize) {
+            return split(chunkSize).stream()
+                .mapToInt(chunk -> chunk.createQuery(entityManager).executeUpdate())
+                .sum();
+        }
+        
+        @Override
+        public String toString() {
+            return cached(() -> replaceAllPrefixes(Stream.of(getUpdateClause(), getWhereClause()).filter(StringUtils::isNotBlank).collect(joining("\n"))));
+        }
+
+        @Override
+        public Map<String, Object> getNamedParameters() {
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            bindParameters(parameters::put);
+            return parameters;
+        }
+
+        @Override
+        void bindStatementParameters(BiConsumer<String, Object> binder) {
+            updateItems.forEach((lhs, value) -> binder.accept(lhs.replaceAll("[^A-Za-z0-9_$]", "_"), value));
+            Optional.ofNullable(where).ifPresent(predicate -> predicate.forEachParameter(sequenced(binder)));
+            
+            if (!keyedItems.isEmpty()) {
+                List<Object> keys = new ArrayList<>(keyedItems.keySet());
+                
+                for (int i = 0; i < keys.size(); i++) {
+                    int index = i;
+                    binder.accept(getKeyParameterName(index), keys.get(index));
+                    keyedItems.get(keys.get(index)).forEach((lhs, value) -> binder.accept(getKeyedParameterName(lhs, index), value));
+                }
+                
+                binder.accept("$keys", keys);
+            }
+        }
+    }
+
+    public static class DeleteStatementBuilder extends StatementBuilder<DeleteStatementBuilder> {
+
+        @Getter
+        private String entityName;
+        
+        @Getter
+        private Predicate where;
+        
+        public DeleteStatementBuilder() {}
+
+        public DeleteStatementBuilder from(String entityName) {
+            DeleteStatementBuilder target = writable();
+            target.entityName = entityName;
+            return target;            
+        }
+        
+        public DeleteStatementBuilder where(Predicate where) {
+            DeleteStatementBuilder target = writable();
+            target.where = where;
+            return target;            
+        }
+
+        @Override
+        DeleteStatementBuilder derive() {
+            DeleteStatementBuilder derived = share(new DeleteStatementBuilder());
+            derived.entityName = entityName;
+            derived.where = where;
+            return derived;
+        }
+        
+        public String getDeleteClause() {
+            return "delete from " + entityName;
+        }
+        
+        public String getWhereClause() {
+            return where != null ? "where " + where : null;
+        }
+        
+        @Override
+        public String toString() {
+            return cached(() -> replaceAllPrefixes(Stream.of(getDeleteClause(), getWhereClause()).filter(StringUtils::isNotBlank).collect(joining("\n"))));
+        }
+
+        @Override
+        public Map<String, Object> getNamedParameters() {
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            bindParameters(parameters::put);
+            return parameters;
+        }
+
+        @Override
+        void bindStatementParameters(BiConsumer<String, Object> binder) {
+            Optional.ofNullable(getWhere()).ifPresent(where -> where.forEachParameter(sequenced(binder)));
+        }
+    }
 }
\ No newline at end of file
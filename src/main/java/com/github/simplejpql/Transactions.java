@@ -0,0 +1,51 @@
+package com.github.simplejpql;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+
+class Transactions {
+
+	private static final AtomicInteger THREADS = new AtomicInteger();
+
+	// the default for background queries. they block on JDBC, so they must not run on the common pool, which is
+	// sized for CPU bound work and shared with parallel streams; idle threads are let go after a minute
+	static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(task -> {
+		Thread thread = new Thread(task, "simplejpql-" + THREADS.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private Transactions() {}
+
+	static <T> T read(EntityManagerFactory entityManagerFactory, Function<EntityManager, T> work) {
+		EntityManager entityManager = entityManagerFactory.createEntityManager();
+
+		try {
+			return work.apply(entityManager);
+		} finally {
+			entityManager.close();
+		}
+	}
+
+	static <T> T write(EntityManagerFactory entityManagerFactory, Function<EntityManager, T> work) {
+		return read(entityManagerFactory, entityManager -> {
+			EntityTransaction transaction = entityManager.getTransaction();
+			transaction.begin();
+
+			try {
+				T result = work.apply(entityManager);
+				transaction.commit();
+				return result;
+			} finally {
+				if (transaction.isActive())
+					transaction.rollback();
+			}
+		});
+	}
+}
@@ -0,0 +1,22 @@
+package com.github.simplejpql;
+
+import org.hibernate.dialect.H2Dialect;
+
+// H2 2.x accepts for update skip locked, but Hibernate's H2Dialect does not render it
+public class SkipLockedH2Dialect extends H2Dialect {
+
+	@Override
+	public boolean supportsSkipLocked() {
+		return true;
+	}
+
+	@Override
+	public String getForUpdateSkipLockedString() {
+		return " for update skip locked";
+	}
+
+	@Override
+	public String getForUpdateSkipLockedString(String aliases) {
+		return getForUpdateSkipLockedString();
+	}
+}
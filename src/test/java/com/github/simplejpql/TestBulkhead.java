@@ -0,0 +1,114 @@
+package com.github.simplejpql;
+
+import static com.github.simplejpql.Operator.eq;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.QueryTimeoutException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
+import com.github.simplejpql.domain.Person;
+
+public class TestBulkhead {
+
+	private static EntityManagerFactory entityManagerFactory;
+
+	@BeforeAll
+	public static void beforeAll() {
+		entityManagerFactory = TestEntityManagerFactories.create("bulkhead");
+
+		Transactions.write(entityManagerFactory, em -> em.merge(Person.builder().name("bulkhead").build()));
+	}
+
+	@AfterAll
+	public static void afterAll() {
+		entityManagerFactory.close();
+	}
+
+	private static SelectStatementBuilder byName(String name) {
+		return StatementBuilder.select("p").from("Person p").where(eq("p.name", name));
+	}
+
+	// occupies a permit for the statement until the returned latch is counted down
+	private static CountDownLatch hold(Bulkhead bulkhead, SelectStatementBuilder statement) throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+
+		CompletableFuture.runAsync(() -> bulkhead.execute(statement, () -> {
+			started.countDown();
+
+			try {
+				return release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}));
+
+		Assert.isTrue(started.await(10, TimeUnit.SECONDS), "Holding execution did not start");
+		return release;
+	}
+
+	@Test
+	public void testFailFast() throws InterruptedException {
+		Bulkhead bulkhead = new Bulkhead(1);
+		CountDownLatch release = hold(bulkhead, byName("held"));
+
+		try {
+			Assert.isTrue(Bulkhead.getFingerprint(byName("held")).equals(Bulkhead.getFingerprint(byName("other"))), "Parameter values should not change the fingerprint");
+			Assertions.assertThrows(QueryTimeoutException.class, () -> Transactions.read(entityManagerFactory, em -> bulkhead.getResultList(em, byName("bulkhead"), Person.class)));
+
+			List<Person> people = Transactions.read(entityManagerFactory, em -> bulkhead.getResultList(em, StatementBuilder.select("p").from("Person p"), Person.class));
+			Assert.isTrue(people.size() == 1, "Other statements should not be limited");
+		} finally {
+			release.countDown();
+		}
+
+		Bulkhead.Statistics statistics = bulkhead.getStatistics().stream()
+			.filter(s -> s.getFingerprint().equals(Bulkhead.getFingerprint(byName("held"))))
+			.findFirst()
+			.orElseThrow();
+
+		Assert.isTrue(statistics.getRejections() == 1 && statistics.getExecutions() == 1, "Expected one execution and one rejection");
+	}
+
+	@Test
+	public void testQueueing() throws Exception {
+		Bulkhead bulkhead = new Bulkhead(1).maxWait(Duration.ofSeconds(10));
+		CountDownLatch release = hold(bulkhead, byName("held"));
+
+		CompletableFuture<List<Person>> queued = CompletableFuture.supplyAsync(() -> Transactions.read(entityManagerFactory, em -> bulkhead.getResultList(em, byName("bulkhead"), Person.class)));
+		Bulkhead.Statistics statistics = bulkhead.getStatistics().iterator().next();
+
+		for (int i = 0; i < 1000 && statistics.getQueueDepth() == 0; i++)
+			Thread.sleep(10);
+
+		Assert.isTrue(statistics.getQueueDepth() == 1 && statistics.getActive() == 1, "Execution beyond the cap should queue");
+		release.countDown();
+
+		Assert.isTrue(queued.get(10, TimeUnit.SECONDS).size() == 1, "Queued execution should run once a permit is released");
+		Assert.isTrue(statistics.getQueueDepth() == 0 && statistics.getRejections() == 0 && statistics.getExecutions() == 2, "Expected two executions and no rejections");
+	}
+
+	@Test
+	public void testLimit() throws InterruptedException {
+		Bulkhead bulkhead = new Bulkhead(2).limit(byName("report"), 1);
+		CountDownLatch release = hold(bulkhead, byName("held"));
+
+		try {
+			Assertions.assertThrows(QueryTimeoutException.class, () -> bulkhead.execute(byName("other"), () -> null));
+			Assertions.assertThrows(IllegalArgumentException.class, () -> new Bulkhead(0));
+		} finally {
+			release.countDown();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.github.simplejpql;
+
+import static com.github.simplejpql.Operator.like;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import com.github.simplejpql.ChunkedExecutor.Progress;
+import com.github.simplejpql.domain.Partner;
+
+public class TestChunkedExecutor {
+
+	private static EntityManagerFactory entityManagerFactory;
+
+	@BeforeAll
+	public static void beforeAll() {
+		entityManagerFactory = TestEntityManagerFactories.create("chunked");
+	}
+
+	@AfterAll
+	public static void afterAll() {
+		entityManagerFactory.close();
+	}
+
+	private static void insert(String prefix, int count) {
+		Transactions.write(entityManagerFactory, em -> {
+			IntStream.range(0, count).forEach(i -> em.persist(Partner.builder().name(prefix + i).build()));
+			return null;
+		});
+	}
+
+	private static long count(String prefix) {
+		return Transactions.read(entityManagerFactory, em -> StatementBuilder
+			.select("count(p)")
+			.from("Partner p")
+			.where(like("p.name", prefix + "%"))
+			.createQuery(em, Long.class)
+			.getSingleResult());
+	}
+
+	@Test
+	public void testChunkedDelete() {
+		insert("purge", 25);
+		insert("keep", 5);
+
+		List<Long> rows = new ArrayList<>();
+		Progress progress = new ChunkedExecutor(entityManagerFactory)
+			.chunkSize(10)
+			.onProgress(p -> rows.add(p.getRows()))
+			.execute(StatementBuilder.delete().from("Partner p").where(like("p.name", "purge%")));
+
+		Assert.isTrue(progress.isCompleted() && progress.getChunks() == 3 && progress.getRows() == 25, "Unexpected progress");
+		Assert.isTrue(rows.equals(List.of(10L, 20L, 25L)), "Progress was not reported per chunk");
+		Assert.isTrue(count("purge") == 0 && count("keep") == 5, "Chunked delete removed the wrong rows");
+	}
+
+	@Test
+	public void testChunkedUpdateResume() {
+		insert("rename", 12);
+
+		Object lastId = Transactions.read(entityManagerFactory, em -> StatementBuilder
+			.select("min(p.id)")
+			.from("Partner p")
+			.where(like("p.name", "rename%"))
+			.createQuery(em, Long.class)
+			.getSingleResult());
+
+		Progress progress = new ChunkedExecutor(entityManagerFactory)
+			.chunkSize(5)
+			.resumeAfter(lastId)
+			.execute(StatementBuilder.update("Partner p").set("p.name", "renamed").where(like("p.name", "rename%")));
+
+		Assert.isTrue(progress.getRows() == 11 && progress.getChunks() == 3, "Resumed update should skip rows up to the checkpoint");
+		Assert.isTrue(count("renamed") == 11, "Chunked update did not update the expected rows");
+	}
+}
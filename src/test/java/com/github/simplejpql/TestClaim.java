@@ -0,0 +1,79 @@
+package com.github.simplejpql;
+
+import static com.github.simplejpql.Operator.like;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
+import com.github.simplejpql.domain.Person;
+
+public class TestClaim {
+
+	private static EntityManagerFactory entityManagerFactory;
+
+	@BeforeAll
+	public static void beforeAll() {
+		entityManagerFactory = TestEntityManagerFactories.create("claim", TestEntityManagerFactories.createDataSource("claim"),
+			Map.of("hibernate.hbm2ddl.auto", "create-drop", "hibernate.dialect", SkipLockedH2Dialect.class.getName()));
+
+		for (int i = 0; i < 4; i++) {
+			Person person = Person.builder().name("job-" + i).build();
+			Transactions.write(entityManagerFactory, em -> em.merge(person));
+		}
+	}
+
+	@AfterAll
+	public static void afterAll() {
+		entityManagerFactory.close();
+	}
+
+	private static List<Long> ids(List<Person> people) {
+		return people.stream().map(Person::getId).collect(Collectors.toList());
+	}
+
+	@Test
+	public void testConcurrentClaims() throws Exception {
+		SelectStatementBuilder pending = StatementBuilder.select("p").from("Person p").where(like("p.name", "job-%")).orderBy("p.id");
+		CountDownLatch claimed = new CountDownLatch(1), release = new CountDownLatch(1);
+
+		// the first claimer holds its locks until the second one is done
+		CompletableFuture<List<Long>> first = CompletableFuture.supplyAsync(() -> Transactions.write(entityManagerFactory, em -> {
+			List<Long> ids = ids(pending.claim(em, Person.class, 2));
+			claimed.countDown();
+
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+
+			return ids;
+		}));
+
+		Assert.isTrue(claimed.await(10, TimeUnit.SECONDS), "Rows were not claimed");
+
+		try {
+			List<Long> second = CompletableFuture
+				.supplyAsync(() -> Transactions.write(entityManagerFactory, em -> ids(pending.claim(em, Person.class, 4))))
+				.get(5, TimeUnit.SECONDS);
+
+			Assert.isTrue(second.size() == 2, "The second claimer should get only the unlocked rows: " + second);
+			release.countDown();
+			Assert.isTrue(first.get(10, TimeUnit.SECONDS).stream().noneMatch(second::contains), "Locked rows should be skipped, not claimed twice");
+		} finally {
+			release.countDown();
+		}
+	}
+}
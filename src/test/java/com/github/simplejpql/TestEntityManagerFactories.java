@@ -0,0 +1,46 @@
+package com.github.simplejpql;
+
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import com.github.simplejpql.domain.Person;
+
+public class TestEntityManagerFactories {
+
+	private TestEntityManagerFactories() {}
+
+	public static DataSource createDataSource(String database) {
+		return new DriverManagerDataSource("jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1");
+	}
+
+	public static EntityManagerFactory create(String database, boolean createSchema) {
+		return create(database, createDataSource(database), createSchema);
+	}
+
+	public static EntityManagerFactory create(String database, DataSource dataSource, boolean createSchema) {
+		return create(database, dataSource, Map.of("hibernate.hbm2ddl.auto", createSchema ? "create-drop" : "none"));
+	}
+
+	public static EntityManagerFactory create(String database, DataSource dataSource, Map<String, ?> properties) {
+		LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+		factory.setPersistenceUnitName(database);
+		factory.setDataSource(dataSource);
+		factory.setPackagesToScan(Person.class.getPackageName());
+		factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+		factory.setJpaPropertyMap(properties);
+		factory.afterPropertiesSet();
+
+		return factory.getObject();
+	}
+
+	public static EntityManagerFactory create(String database) {
+		return create(database, true);
+	}
+}
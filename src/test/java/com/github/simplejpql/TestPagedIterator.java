@@ -0,0 +1,113 @@
+package com.github.simplejpql;
+
+import static com.github.simplejpql.Operator.like;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
+import com.github.simplejpql.domain.Person;
+
+public class TestPagedIterator {
+
+	private static EntityManagerFactory entityManagerFactory;
+
+	@BeforeAll
+	public static void beforeAll() {
+		entityManagerFactory = TestEntityManagerFactories.create("paged");
+
+		for (int i = 0; i < 25; i++) {
+			Person person = Person.builder().name(String.format("person%02d", 24 - i)).build();
+			Transactions.write(entityManagerFactory, em -> em.merge(person));
+		}
+	}
+
+	@AfterAll
+	public static void afterAll() {
+		entityManagerFactory.close();
+	}
+
+	private static List<List<String>> names(PagedIterator<Person> iterator) {
+		List<List<String>> pages = new ArrayList<>();
+
+		try (iterator) {
+			iterator.forEachRemaining(page -> pages.add(page.stream().map(Person::getName).collect(Collectors.toList())));
+		}
+
+		return pages;
+	}
+
+	private static List<String> expected(int from, int to) {
+		return IntStream.range(from, to).mapToObj(i -> String.format("person%02d", i)).collect(Collectors.toList());
+	}
+
+	@Test
+	public void testKeyset() {
+		SelectStatementBuilder statement = StatementBuilder.select("p").from("Person p").where(like("p.name", "person%"));
+		List<List<String>> pages = names(new PagedIterator<>(entityManagerFactory, statement, Person.class).pageSize(10));
+
+		Assert.isTrue(pages.stream().mapToInt(List::size).boxed().collect(Collectors.toList()).equals(List.of(10, 10, 5)), "Expected pages of 10, 10 and 5: " + pages);
+		Assert.isTrue(pages.stream().flatMap(List::stream).distinct().count() == 25, "Every row should be visited once");
+
+		pages = names(new PagedIterator<>(entityManagerFactory, statement, Person.class).pageSize(10).prefetchDepth(0).keyset("p.name", Person::getName));
+		Assert.isTrue(pages.stream().flatMap(List::stream).collect(Collectors.toList()).equals(expected(0, 25)), "Keyset pages should follow the key");
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new PagedIterator<>(entityManagerFactory, statement.copy().orderBy("p.nickName"), Person.class).keyset("p.name", Person::getName).hasNext());
+	}
+
+	@Test
+	public void testOffset() {
+		SelectStatementBuilder statement = StatementBuilder.select("p").from("Person p").orderBy("p.name").firstResult(3).maxResults(2);
+		List<List<String>> pages = names(new PagedIterator<>(entityManagerFactory, statement, Person.class).pageSize(5));
+
+		Assert.isTrue(pages.size() == 5 && pages.stream().flatMap(List::stream).collect(Collectors.toList()).equals(expected(0, 25)), "Offset pages should cover every row in order");
+		Assert.isTrue(!new PagedIterator<>(entityManagerFactory, statement.copy().where(like("p.name", "none")), Person.class).hasNext(), "Expected no pages");
+
+		// every nickName is null, so only the id tiebreaker keeps the pages apart
+		pages = names(new PagedIterator<>(entityManagerFactory, StatementBuilder.select("p").from("Person p").orderBy("p.nickName"), Person.class).pageSize(4));
+		Assert.isTrue(pages.stream().flatMap(List::stream).distinct().count() == 25, "Ties in the order should not repeat or skip rows");
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new PagedIterator<>(entityManagerFactory, StatementBuilder.select("p.name").from("Person p"), String.class).hasNext(), "Unordered offset paging should be rejected");
+	}
+
+	// waits for the background fetches to reach count, then checks they stop there
+	private static void awaitFetches(AtomicInteger fetches, int count) throws InterruptedException {
+		for (int i = 0; i < 500 && fetches.get() < count; i++)
+			Thread.sleep(10);
+
+		Thread.sleep(200);
+		Assert.isTrue(fetches.get() == count, String.format("Expected %d fetches, not %d", count, fetches.get()));
+	}
+
+	@Test
+	public void testPrefetch() throws InterruptedException {
+		AtomicInteger fetches = new AtomicInteger();
+		Executor executor = command -> {
+			fetches.incrementAndGet();
+			ForkJoinPool.commonPool().execute(command);
+		};
+
+		SelectStatementBuilder statement = StatementBuilder.select("p").from("Person p").orderBy("p.name");
+
+		try (PagedIterator<Person> iterator = new PagedIterator<>(entityManagerFactory, statement, Person.class).pageSize(2).prefetchDepth(2).executor(executor)) {
+			Assert.isTrue(iterator.next().size() == 2, "Expected a full page");
+			awaitFetches(fetches, 3);
+
+			Assert.isTrue(iterator.next().size() == 2, "Expected a full page");
+			awaitFetches(fetches, 4);
+		}
+	}
+}
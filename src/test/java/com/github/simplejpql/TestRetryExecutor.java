@@ -0,0 +1,110 @@
+package com.github.simplejpql;
+
+import static com.github.simplejpql.Operator.eq;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.PessimisticLockException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import com.github.simplejpql.domain.Person;
+
+public class TestRetryExecutor {
+
+	private static EntityManagerFactory entityManagerFactory;
+
+	@BeforeAll
+	public static void beforeAll() {
+		entityManagerFactory = TestEntityManagerFactories.create("retry");
+
+		Transactions.write(entityManagerFactory, em -> em.merge(Person.builder().name("locked").build()));
+	}
+
+	@AfterAll
+	public static void afterAll() {
+		entityManagerFactory.close();
+	}
+
+	@Test
+	public void testClassification() {
+		Assert.isTrue(RetryExecutor.isRetryable(new PessimisticLockException()), "Lock failures should be retried");
+		Assert.isTrue(RetryExecutor.isRetryable(new PersistenceException(new SQLException("Deadlock detected", "40001"))), "Deadlocks should be retried");
+		Assert.isTrue(!RetryExecutor.isRetryable(new PersistenceException(new SQLException("Syntax error", "42000"))), "Other failures should not be retried");
+	}
+
+	@Test
+	public void testRetry() {
+		RetryExecutor executor = new RetryExecutor(entityManagerFactory).backoff(Duration.ofMillis(1), Duration.ofMillis(10), 2);
+		AtomicInteger attempts = new AtomicInteger();
+
+		String name = executor.execute(em -> {
+			Assert.isTrue(em.getTransaction().isActive(), "Work should run in a transaction");
+
+			if (attempts.incrementAndGet() < 3)
+				throw new PessimisticLockException();
+
+			return "done";
+		});
+
+		Assert.isTrue(name.equals("done") && attempts.get() == 3, "Expected success on the third attempt");
+		Assert.isTrue(executor.getRetries() == 2 && executor.getGiveUps() == 0, "Expected two retries");
+
+		Assertions.assertThrows(PessimisticLockException.class, () -> executor.maxAttempts(2).execute(em -> {
+			throw new PessimisticLockException();
+		}));
+		Assert.isTrue(executor.getRetries() == 3 && executor.getGiveUps() == 1, "Expected a retry and a give up");
+
+		Assertions.assertThrows(IllegalStateException.class, () -> executor.execute(em -> {
+			throw new IllegalStateException();
+		}));
+		Assert.isTrue(executor.getRetries() == 3 && executor.getGiveUps() == 1, "Other failures should not be retried");
+	}
+
+	@Test
+	public void testLockContention() throws Exception {
+		CountDownLatch locked = new CountDownLatch(1), release = new CountDownLatch(1);
+
+		CompletableFuture<Object> holder = CompletableFuture.supplyAsync(() -> Transactions.write(entityManagerFactory, em -> {
+			StatementBuilder.select("p").from("Person p").where(eq("p.name", "locked")).lockMode(LockModeType.PESSIMISTIC_WRITE)
+				.createQuery(em, Person.class)
+				.getResultList();
+			locked.countDown();
+
+			try {
+				return release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}));
+
+		Assert.isTrue(locked.await(10, TimeUnit.SECONDS), "Row was not locked");
+
+		RetryExecutor executor = new RetryExecutor(entityManagerFactory).maxAttempts(10).backoff(Duration.ofMillis(10), Duration.ofMillis(100), 2);
+		CompletableFuture<Integer> update = CompletableFuture.supplyAsync(() -> executor.executeUpdate(StatementBuilder
+			.update("Person p")
+			.set("p.nickName", "retried")
+			.where(eq("p.name", "locked"))));
+
+		for (int i = 0; i < 1000 && executor.getRetries() == 0; i++)
+			Thread.sleep(10);
+
+		release.countDown();
+		holder.get(10, TimeUnit.SECONDS);
+
+		Assert.isTrue(update.get(30, TimeUnit.SECONDS) == 1, "Update should succeed once the lock is released");
+		Assert.isTrue(executor.getRetries() > 0 && executor.getGiveUps() == 0, "Expected the update to be retried");
+	}
+}
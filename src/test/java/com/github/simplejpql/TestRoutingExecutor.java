@@ -0,0 +1,100 @@
+package com.github.simplejpql;
+
+import static com.github.simplejpql.Operator.eq;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.util.Assert;
+
+import com.github.simplejpql.domain.Person;
+
+public class TestRoutingExecutor {
+
+	private static final AtomicBoolean unreachable = new AtomicBoolean();
+
+	private static EntityManagerFactory primary, replica, broken, schemaless;
+
+	@BeforeAll
+	public static void beforeAll() {
+		primary = TestEntityManagerFactories.create("routing_primary");
+		replica = TestEntityManagerFactories.create("routing_replica");
+		schemaless = TestEntityManagerFactories.create("routing_schemaless", false);
+
+		// a replica that stops accepting connections once the test takes it down
+		DataSource dataSource = TestEntityManagerFactories.createDataSource("routing_broken");
+		broken = TestEntityManagerFactories.create("routing_broken", new DelegatingDataSource(dataSource) {
+			@Override
+			public Connection getConnection() throws SQLException {
+				if (unreachable.get())
+					throw new SQLTransientConnectionException("Connection refused", "08001");
+
+				return super.getConnection();
+			}
+		}, true);
+
+		Transactions.write(primary, em -> em.merge(Person.builder().name("primary").build()));
+		Transactions.write(replica, em -> em.merge(Person.builder().name("replica").build()));
+	}
+
+	@AfterAll
+	public static void afterAll() {
+		List.of(primary, replica, broken, schemaless).forEach(EntityManagerFactory::close);
+	}
+
+	private static List<String> names(RoutingExecutor executor, LockModeType lockMode) {
+		return executor
+			.getResultList(StatementBuilder.select("p").from("Person p").lockMode(lockMode), Person.class)
+			.stream()
+			.map(Person::getName)
+			.collect(Collectors.toList());
+	}
+
+	@Test
+	public void testRouting() {
+		RoutingExecutor executor = new RoutingExecutor(primary, replica);
+
+		Assert.isTrue(names(executor, null).equals(List.of("replica")), "Plain selects should be routed to the replica");
+		Assert.isTrue(names(executor, LockModeType.PESSIMISTIC_WRITE).equals(List.of("primary")), "Locking selects should be routed to the primary");
+		Assert.isTrue(executor.onPrimary(() -> names(executor, null)).equals(List.of("primary")), "onPrimary should route selects to the primary");
+
+		Assert.isTrue(executor.executeUpdate(StatementBuilder.update("Person p").set("p.nickName", "updated").where(eq("p.name", "primary"))) == 1, "Updates should be routed to the primary");
+	}
+
+	@Test
+	public void testFailover() {
+		RoutingExecutor executor = new RoutingExecutor(primary, broken).retryAfter(Duration.ofMinutes(1));
+		unreachable.set(true);
+
+		try {
+			Assert.isTrue(names(executor, null).equals(List.of("primary")), "Unreachable replicas should fall back to the primary");
+			Assert.isTrue(executor.getHealthyReplicaCount() == 0, "Unreachable replica should be marked down");
+		} finally {
+			unreachable.set(false);
+		}
+	}
+
+	@Test
+	public void testStatementFailure() {
+		RoutingExecutor executor = new RoutingExecutor(primary, schemaless).retryAfter(Duration.ofMinutes(1));
+
+		Assertions.assertThrows(PersistenceException.class, () -> names(executor, null));
+		Assert.isTrue(executor.getHealthyReplicaCount() == 1, "Statement failures should not mark a replica down");
+	}
+}
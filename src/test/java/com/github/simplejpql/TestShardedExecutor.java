@@ -0,0 +1,101 @@
+package com.github.simplejpql;
+
+import static com.github.simplejpql.Operator.like;
+
+import java.math.BigInteger;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.Assert;
+
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
+import com.github.simplejpql.domain.Person;
+
+public class TestShardedExecutor {
+
+	private static List<EntityManagerFactory> shards;
+
+	@BeforeAll
+	public static void beforeAll() {
+		shards = IntStream.range(0, 3)
+			.mapToObj(i -> TestEntityManagerFactories.create("shard_" + i))
+			.collect(Collectors.toList());
+
+		// person i lives on shard i % 3, so every shard holds an interleaved slice of the ordering
+		for (int i = 0; i < 20; i++) {
+			Person person = Person.builder().name(String.format("person%02d", i)).nickName(i % 4 == 0 ? null : "nick" + (i % 5)).build();
+			Transactions.write(shards.get(i % 3), em -> em.merge(person));
+		}
+	}
+
+	@AfterAll
+	public static void afterAll() {
+		shards.forEach(EntityManagerFactory::close);
+	}
+
+	private static List<String> names(List<Person> people) {
+		return people.stream().map(Person::getName).collect(Collectors.toList());
+	}
+
+	private static List<String> expected(int from, int to) {
+		return IntStream.range(from, to).mapToObj(i -> String.format("person%02d", i)).collect(Collectors.toList());
+	}
+
+	@Test
+	public void testMerge() {
+		// H2 compares strings by code point, which is what String.compareTo does
+		ShardedExecutor executor = new ShardedExecutor(shards).collation(Comparator.naturalOrder());
+		SelectStatementBuilder statement = StatementBuilder.select("p").from("Person p").where(like("p.name", "person%")).orderBy("p.name");
+
+		Assert.isTrue(names(executor.getResultList(statement, Person.class)).equals(expected(0, 20)), "Results should be merged in order");
+		Assert.isTrue(names(executor.getResultList(statement.copy().firstResult(5).maxResults(7), Person.class)).equals(expected(5, 12)), "Paging should apply to the merged results");
+		Assert.isTrue(executor.getResultList(StatementBuilder.select("p.name").from("Person p").orderBy("p.name desc"), String.class).equals(expected(0, 20).stream().sorted((a, b) -> b.compareTo(a)).collect(Collectors.toList())), "Descending order should be merged");
+
+		List<Object[]> rows = executor.getResultList(StatementBuilder.select("p.nickName, p.name").from("Person p").orderBy("p.nickName nulls last", "p.name").maxResults(3), Object[].class);
+		Assert.isTrue(rows.size() == 3 && rows.get(0)[0].equals("nick0") && rows.get(0)[1].equals("person05") && rows.get(2)[1].equals("person15"), "Multiple order keys should be merged");
+
+		Assert.isTrue(executor.getResultList(StatementBuilder.select("p").from("Person p").maxResults(4), Person.class).size() == 4, "Unordered results should be paged");
+		Assert.isTrue(names(executor.getResultList(StatementBuilder.select().from("Person p").orderBy("p.name").maxResults(3), Person.class)).equals(expected(0, 3)), "An empty select should return the root entity, not the order key");
+
+		// without the shards' collation, string keys cannot be merged
+		Assertions.assertThrows(IllegalStateException.class, () -> new ShardedExecutor(shards).getResultList(statement, Person.class));
+		Assert.isTrue(new ShardedExecutor(shards).getResultList(StatementBuilder.select("p").from("Person p").orderBy("p.version", "p.id").maxResults(2), Person.class).size() == 2, "Keys other than strings need no collation");
+	}
+
+	@Test
+	public void testAggregates() {
+		// H2 compares strings by code point, which is what String.compareTo does
+		ShardedExecutor executor = new ShardedExecutor(shards).collation(Comparator.naturalOrder());
+
+		Assert.isTrue(executor.getAggregate(StatementBuilder.select("count(p)").from("Person p"), Long.class) == 20, "Counts should be summed");
+		Assert.isTrue(executor.getAggregate(StatementBuilder.select("max(p.name)").from("Person p"), String.class).equals("person19"), "Expected the greatest maximum");
+
+		Object[] row = executor.getAggregateResultList(StatementBuilder.select("min(p.name), sum(p.version), count(p.nickName)").from("Person p")).get(0);
+		Assert.isTrue(row[0].equals("person00") && ((Number) row[1]).longValue() == 0 && row[2].equals(15L), "Expected combined aggregates");
+
+		List<Object[]> groups = executor.getAggregateResultList(StatementBuilder.select("p.nickName, count(p)").from("Person p").where(like("p.nickName", "nick%")).groupBy("p.nickName"));
+		Assert.isTrue(groups.size() == 5 && groups.stream().mapToLong(group -> (Long) group[1]).sum() == 15, "Groups should be combined across shards");
+
+		List<Object[]> page = executor.getAggregateResultList(StatementBuilder.select("p.nickName, count(p)").from("Person p").where(like("p.nickName", "nick%")).groupBy("p.nickName").orderBy("p.nickName desc").firstResult(1).maxResults(2));
+		Assert.isTrue(page.size() == 2 && page.get(0)[0].equals("nick3") && page.get(1)[0].equals("nick2"), "Combined groups should be ordered and paged after the merge");
+
+		BigInteger large = BigInteger.valueOf(Long.MAX_VALUE);
+		Object sum = executor.getAggregate(StatementBuilder.select("sum(cast(p.version as BigInteger) + " + large + "BI)").from("Person p"), Object.class);
+		Assert.isTrue(large.multiply(BigInteger.valueOf(20)).equals(sum), "Sums should not be truncated to a long: " + sum);
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> executor.getAggregateResultList(StatementBuilder.select("p.nickName, count(p)").from("Person p").groupBy("p.nickName").having(Operator.gt("count(p)", 1L))));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> executor.getAggregateResultList(StatementBuilder.select("count(p)").from("Person p").orderBy("p.name")));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> executor.getAggregateResultList(StatementBuilder.select("avg(p.version)").from("Person p")));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> executor.getAggregateResultList(StatementBuilder.select("count(distinct p.nickName)").from("Person p")));
+		Assertions.assertThrows(IllegalStateException.class, () -> new ShardedExecutor(shards).getAggregate(StatementBuilder.select("max(p.name)").from("Person p"), String.class));
+		Assert.isTrue(new ShardedExecutor(shards).getAggregate(StatementBuilder.select("count(p)").from("Person p"), Long.class) == 20, "Counts need no collation");
+	}
+}
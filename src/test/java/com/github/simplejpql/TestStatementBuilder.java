@@ -1,159 +1,849 @@
-package com.github.simplejpql;
-
-import static com.github.simplejpql.Operator.and;
-import static com.github.simplejpql.Operator.between;
-import static com.github.simplejpql.Operator.eq;
-import static com.github.simplejpql.Operator.gt;
-import static com.github.simplejpql.Operator.in;
-import static com.github.simplejpql.Operator.like;
-import static com.github.simplejpql.Operator.or;
-import static java.lang.Math.round;
-import static java.util.stream.Collectors.toList;
-
-import java.time.LocalDateTime;
-import java.util.Arrays;
-import java.util.UUID;
-import java.util.stream.Stream;
-
-import jakarta.persistence.EntityManager;
-
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
-import org.springframework.test.context.ContextConfiguration;
-import org.springframework.util.Assert;
-
-import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
-import com.github.simplejpql.domain.Person;
-import com.github.simplejpql.domain.Phone;
-import com.github.simplejpql.domain.PhoneType;
-
-@DataJpaTest
-@ContextConfiguration(classes = TestConfig.class)
-public class TestStatementBuilder {
-
-	@Autowired
-	private EntityManager entityManager;
-	
-	private long random(long min, long max) {
-		return min + Math.round(Math.random() * (max - min));
-	}
-
-	@BeforeEach
-	public void beforeEach() {
-		
-	}
-	
-	private SelectStatementBuilder getSelectStatementBuilder() {
-		return StatementBuilder
-			.select("p")
-			.from("Person p")
-			.where(and(
-				eq("active", true),
-				or(like("p.name", "%A%B%C%D%", true), like("p.name", "%1%2%3%4%", true)),
-				gt("p.createdOn", LocalDateTime.now().minusDays(7))));
-	}
-
-	@Test
-	public void testSelect() {	
-		Stream
-			.generate(() -> Person.builder()
-				.name(UUID.randomUUID().toString())
-				.nickName(UUID.randomUUID().toString())
-				.address(UUID.randomUUID().toString())
-				.createdOn(LocalDateTime.now().minusDays(random(1, 14)))
-				.active(random(1,10) % 2 == 0)
-				.phones(Stream
-					.generate(() -> Phone.builder()
-						.number(String.format("%010d", round(Math.random() * 10000000000L)))
-						.build())
-					.limit(5)
-					.collect(toList()))
-				.build())
-			.limit(50)
-			.forEach(entityManager::merge);
-		
-		getSelectStatementBuilder()
-			.createQuery(entityManager, Person.class)
-			.getResultList();
-	}
-
-	@Test
-	public void testSelectParameterSequencing() {
-		SelectStatementBuilder
-			builder1 = getTestSelectStatementBuilder(),
-			builder2 = getTestSelectStatementBuilder();
-		
-		String query = builder1.toString();
-			
-		Assert.isTrue(builder1.toString().equals(builder2.toString()), "Query strings do not match. This impacts query cache performance.");
-		Assert.isTrue(builder1.getNamedParameters().keySet().equals(builder2.getNamedParameters().keySet()), "Query parameters do not match");
-		Assert.isTrue(builder1.getNamedParameters().keySet().stream().allMatch(query::contains), "Query string does not contain a named parameter");
-	}
-
-	public SelectStatementBuilder getTestSelectStatementBuilder() {
-		return StatementBuilder
-			.select("p")
-			.from("Person p")
-			.leftJoin("p.phones ph", and(like("ph.number", "407-%"), eq("ph.type", PhoneType.MOBILE)))
-			.having(gt("ph_count", 1))
-			.where(and(
-				eq("active", true),
-				or(like("p.name", "%A%B%C%D%", true), like("p.name", "%1%2%3%4%", true)),
-				gt("p.createdOn", LocalDateTime.now().minusDays(7))));
-	}
-	
-	private Predicate generatePredicate() {
-		switch((int) random(1,8)) {
-			case 1: return and(Stream.generate(this::generatePredicate).limit(random(1,5)).collect(toList()));
-			case 5: return or(Stream.generate(this::generatePredicate).limit(random(1,5)).collect(toList()));
-			case 2,6: return eq("", "");
-			case 3,7: return between("", random(1,5), random(6,10));
-			case 4,8: return in("", Arrays.asList(1));
-		}
-		
-		throw new IllegalArgumentException("This should not happen");
-	}
-
-	@Test
-	public void testUpdate() {
-		Person p = entityManager.merge(Person.builder()
-			.name(UUID.randomUUID().toString())
-			.build());
-		
-		String newName = UUID.randomUUID().toString();
-		
-		StatementBuilder
-			.update("Person p")
-			.set("p.name", newName)
-			.where(eq("p.name", p.getName()))
-			.createQuery(entityManager)
-			.executeUpdate();
-		
-		entityManager.refresh(p);
-		
-		Assert.isTrue(p.getName().equals(newName), "Person.name was not updated as expected");
-	}
-	
-	@Test
-	public void testDelete() {
-		Person p = entityManager.merge(Person.builder()
-			.name(UUID.randomUUID().toString())
-			.build());
-		
-		StatementBuilder
-			.delete()
-			.from("Person p")
-			.where(eq("p.name", p.getName()))
-			.createQuery(entityManager)
-			.executeUpdate();
-		
-		Assert.isTrue(StatementBuilder
-			.select()
-			.from("Person")
-			.where(eq("id", p.getId()))
-			.createQuery(entityManager, Person.class)
-			.getResultList().isEmpty(), "Person was not deleted as expected");
-	}
-}
+package com.github.simplejpql;
+
+import static com.github.simplejpql.Operator.and;
+import static com.github.simplejpql.Operator.between;
+import static com.github.simplejpql.Operator.contains;
+import static com.github.simplejpql.Operator.eq;
+import static com.github.simplejpql.Operator.exists;
+import static com.github.simplejpql.Operator.expr;
+import static com.github.simplejpql.Operator.gt;
+import static com.github.simplejpql.Operator.in;
+import static com.github.simplejpql.Operator.isNull;
+import static com.github.simplejpql.Operator.like;
+import static com.github.simplejpql.Operator.notIn;
+import static com.github.simplejpql.Operator.or;
+import static com.github.simplejpql.Operator.startsWith;
+import static java.lang.Math.round;
+import static java.util.stream.Collectors.toList;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceUnitUtil;
+import jakarta.persistence.QueryTimeoutException;
+import jakarta.persistence.TypedQuery;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.util.Assert;
+
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder;
+import com.github.simplejpql.StatementBuilder.SelectStatementBuilder.FetchStrategy;
+import com.github.simplejpql.StatementBuilder.UpdateStatementBuilder;
+import com.github.simplejpql.domain.AddressType;
+import com.github.simplejpql.domain.Call;
+import com.github.simplejpql.domain.Person;
+import com.github.simplejpql.domain.PersonLabel;
+import com.github.simplejpql.domain.PersonSummary;
+import com.github.simplejpql.domain.Phone;
+import com.github.simplejpql.domain.PhoneType;
+
+@DataJpaTest
+@ContextConfiguration(classes = TestConfig.class)
+public class TestStatementBuilder {
+
+	@Autowired
+	private EntityManager entityManager;
+	
+	private long random(long min, long max) {
+		return min + Math.round(Math.random() * (max - min));
+	}
+
+	@BeforeEach
+	public void beforeEach() {
+		
+	}
+	
+	private SelectStatementBuilder getSelectStatementBuilder() {
+		return StatementBuilder
+			.select("p")
+			.from("Person p")
+			.where(and(
+				eq("active", true),
+				or(like("p.name", "%A%B%C%D%", true), like("p.name", "%1%2%3%4%", true)),
+				gt("p.createdOn", LocalDateTime.now().minusDays(7))));
+	}
+
+	@Test
+	public void testSelect() {	
+		Stream
+			.generate(() -> Person.builder()
+				.name(UUID.randomUUID().toString())
+				.nickName(UUID.randomUUID().toString())
+				.address(UUID.randomUUID().toString())
+				.createdOn(LocalDateTime.now().minusDays(random(1, 14)))
+				.active(random(1,10) % 2 == 0)
+				.phones(Stream
+					.generate(() -> Phone.builder()
+						.number(String.format("%010d", round(Math.random() * 10000000000L)))
+						.build())
+					.limit(5)
+					.collect(toList()))
+				.build())
+			.limit(50)
+			.forEach(entityManager::merge);
+		
+		getSelectStatementBuilder()
+			.createQuery(entityManager, Person.class)
+			.getResultList();
+	}
+
+	@Test
+	public void testSelectParameterSequencing() {
+		SelectStatementBuilder
+			builder1 = getTestSelectStatementBuilder(),
+			builder2 = getTestSelectStatementBuilder();
+		
+		String query = builder1.toString();
+			
+		Assert.isTrue(builder1.toString().equals(builder2.toString()), "Query strings do not match. This impacts query cache performance.");
+		Assert.isTrue(builder1.getNamedParameters().keySet().equals(builder2.getNamedParameters().keySet()), "Query parameters do not match");
+		Assert.isTrue(builder1.getNamedParameters().keySet().stream().allMatch(query::contains), "Query string does not contain a named parameter");
+	}
+
+	public SelectStatementBuilder getTestSelectStatementBuilder() {
+		return StatementBuilder
+			.select("p")
+			.from("Person p")
+			.leftJoin("p.phones ph", and(like("ph.number", "407-%"), eq("ph.type", PhoneType.MOBILE)))
+			.having(gt("ph_count", 1))
+			.where(and(
+				eq("active", true),
+				or(like("p.name", "%A%B%C%D%", true), like("p.name", "%1%2%3%4%", true)),
+				gt("p.createdOn", LocalDateTime.now().minusDays(7))));
+	}
+	
+	private Predicate generatePredicate() {
+		switch((int) random(1,8)) {
+			case 1: return and(Stream.generate(this::generatePredicate).limit(random(1,5)).collect(toList()));
+			case 5: return or(Stream.generate(this::generatePredicate).limit(random(1,5)).collect(toList()));
+			case 2,6: return eq("", "");
+			case 3,7: return between("", random(1,5), random(6,10));
+			case 4,8: return in("", Arrays.asList(1));
+		}
+		
+		throw new IllegalArgumentException("This should not happen");
+	}
+
+	@Test
+	public void testFetchStrategy() {
+		entityManager.persist(Person.builder()
+			.name(UUID.randomUUID().toString())
+			.phones(Stream
+				.generate(() -> Phone.builder().number(UUID.randomUUID().toString()).build())
+				.limit(3)
+				.collect(toList()))
+			.build());
+		
+		entityManager.flush();
+		entityManager.clear();
+		
+		SelectStatementBuilder builder = StatementBuilder
+			.select("p")
+			.from("Person p")
+			.associate("join fetch p.phones ph")
+			.associate("left join fetch ph.calls")
+			.fetchStrategy(FetchStrategy.LOAD_GRAPH);
+		
+		Assert.isTrue(!builder.toString().contains("fetch"), "Fetch joins were not replaced by the entity graph");
+		Assert.isTrue(builder.getGraphPaths().equals(new LinkedHashSet<>(Arrays.asList("phones", "phones.calls"))), "Unexpected graph paths");
+		
+		PersistenceUnitUtil util = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+		
+		Assert.isTrue(builder
+			.createQuery(entityManager, Person.class)
+			.getResultList()
+			.stream()
+			.allMatch(p -> util.isLoaded(p, "phones")), "Person.phones was not loaded by the entity graph");
+		
+		Assert.isTrue(StatementBuilder
+			.select("p")
+			.from("Person p")
+			.fetch("phones.calls")
+			.toString()
+			.contains("left join fetch p_phones.calls p_phones_calls"), "Fetch paths were not rendered as fetch joins");
+	}
+
+	@Test
+	public void testSplitFetches() {
+		Stream
+			.generate(() -> Person.builder()
+				.name(UUID.randomUUID().toString())
+				.addresses(new HashMap<>(Map.of(AddressType.HOME, "Home", AddressType.OFFICE, "Office")))
+				.phones(Stream
+					.generate(() -> {
+						Phone phone = Phone.builder().number(UUID.randomUUID().toString()).build();
+						
+						Stream.generate(Call::new).limit(2).forEach(call -> {
+							call.setPhone(phone);
+							phone.getCalls().add(call);
+						});
+						
+						return phone;
+					})
+					.limit(2)
+					.collect(toList()))
+				.build())
+			.limit(3)
+			.forEach(entityManager::persist);
+		
+		// the inner fetch of the calls excludes this person, whether or not it is split off
+		entityManager.persist(Person.builder()
+			.name(UUID.randomUUID().toString())
+			.addresses(new HashMap<>(Map.of(AddressType.HOME, "Home")))
+			.phones(new ArrayList<>(List.of(Phone.builder().number(UUID.randomUUID().toString()).build())))
+			.build());
+		
+		entityManager.flush();
+		entityManager.clear();
+		
+		SelectStatementBuilder builder = StatementBuilder
+			.select("p")
+			.from("Person p")
+			.associate("join fetch p.phones ph")
+			.associate("join fetch ph.calls")
+			.associate("join fetch p.addresses")
+			.fetchStrategy(FetchStrategy.SPLIT);
+		
+		Assert.isTrue(builder.getSplitFetches(entityManager).size() == 2, "Expected the calls and addresses fetches to be split");
+		
+		PersistenceUnitUtil util = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+		List<Person> persons = builder.getResultList(entityManager, Person.class);
+		
+		Assert.isTrue(persons.size() == 3, "Split fetching returned duplicate or missing roots");
+		Assert.isTrue(persons.stream().allMatch(p -> util.isLoaded(p, "phones") && util.isLoaded(p, "addresses")), "Person collections were not loaded");
+		Assert.isTrue(persons.stream().flatMap(p -> p.getPhones().stream()).allMatch(ph -> util.isLoaded(ph, "calls")), "Phone.calls was not loaded");
+	}
+
+	@Test
+	public void testProjection() {
+		Person person = entityManager.merge(Person.builder()
+			.name(UUID.randomUUID().toString())
+			.phones(Stream
+				.generate(() -> Phone.builder().number(UUID.randomUUID().toString()).build())
+				.limit(2)
+				.collect(toList()))
+			.build());
+		
+		entityManager.flush();
+		entityManager.clear();
+		
+		Projection<PersonSummary> projection = Projection.of(PersonSummary.class).map("phoneCount", "size(p.phones)");
+		SelectStatementBuilder builder = StatementBuilder
+			.select(projection)
+			.from("Person p")
+			.where(eq("p.id", person.getId()));
+		
+		Assert.isTrue(builder.toString().startsWith("select new " + PersonSummary.class.getName() + "(p.id, p.name, size(p.phones))"), "Unexpected constructor expression");
+		Assert.isTrue(builder.getResultStream(entityManager, projection).toList().equals(List.of(new PersonSummary(person.getId(), person.getName(), 2))), "Constructor projection mismatch");
+		Assert.isTrue(builder.getResultStream(entityManager, Projection.of(PersonSummary.class).map("phoneCount", "size(p.phones)").tuple()).toList().equals(List.of(new PersonSummary(person.getId(), person.getName(), 2))), "Tuple projection mismatch");
+		
+		Projection<PersonLabel> label = Projection.of(PersonLabel.class);
+		Assert.isTrue(label.getProperties().equals(List.of("id", "name")), "Plain classes should be bound by constructor parameter names: " + label.getProperties());
+		Assert.isTrue(builder.getResultStream(entityManager, label.tuple()).toList().equals(List.of(new PersonLabel(person.getId(), person.getName()))), "Plain class projection mismatch");
+	}
+
+	@Test
+	public void testSubqueries() {
+		Person mobile = entityManager.merge(Person.builder()
+			.name("subquery-mobile")
+			.phones(Arrays.asList(Phone.builder().number("407-555-0100").type(PhoneType.MOBILE).build()))
+			.build());
+		
+		entityManager.merge(Person.builder()
+			.name("subquery-landline")
+			.phones(Arrays.asList(Phone.builder().number("407-555-0101").type(PhoneType.LAND_LINE).build()))
+			.build());
+		
+		SelectStatementBuilder builder = StatementBuilder
+			.select("p")
+			.from("Person p")
+			.where(and(
+				like("p.name", "subquery-%"),
+				exists(StatementBuilder
+					.select("ph")
+					.from("Phone ph")
+					.where(and(expr("ph.person = p"), eq("ph.type", PhoneType.MOBILE)))
+					.orderBy("ph.number")),
+				notIn("p.id", StatementBuilder
+					.select("ph.person.id")
+					.from("Phone ph")
+					.where(eq("ph.type", PhoneType.LAND_LINE))),
+				in("p.name", StatementBuilder
+					.select("p2.name")
+					.from("Person p2")
+					.where(like("p2.name", "subquery-%"))
+					.orderBy("p2.name"))));
+		
+		String query = builder.toString();
+		
+		Assert.isTrue(!query.contains("order by"), "Subqueries should not be ordered: " + query);
+		
+		Assert.isTrue(builder.getNamedParameters().size() == 4, "Subquery parameters were not merged");
+		Assert.isTrue(builder.getNamedParameters().keySet().stream().allMatch(query::contains), "Query string does not contain a subquery parameter");
+		Assert.isTrue(builder
+			.createQuery(entityManager, Person.class)
+			.getResultList()
+			.stream()
+			.map(Person::getId)
+			.collect(toList())
+			.equals(Arrays.asList(mobile.getId())), "Subquery predicates returned unexpected rows");
+	}
+
+	@Test
+	public void testCaseInsensitivity() {
+		Person person = entityManager.merge(Person.builder().name("Case-" + UUID.randomUUID()).build());
+		
+		Assert.isTrue(eq("p.name", "A", true).toString().matches("lower\\(p\\.name\\) = lower\\(:\\S+\\)"), "Unexpected default rendering");
+		Assert.isTrue(eq("p.name", "A", CaseInsensitivity.LOWER_COLUMN).toString().matches("lower\\(p\\.name\\) = :\\S+"), "Parameter side should be unwrapped");
+		Assert.isTrue(eq("p.name", "A", CaseInsensitivity.LOWER_COLUMN).getNamedParameters().containsValue("a"), "Value should be lower-cased in Java");
+		Assert.isTrue(like("p.name", "A%", CaseInsensitivity.shadow(Map.of("name", "nameLower"))).toString().startsWith("p.nameLower like :"), "Shadow property was not used");
+		Assert.isTrue(like("p.name", "A%", true).toString().startsWith("lower(p.name) like lower(:"), "Like should honour ignoreCase");
+		
+		Assert.isTrue(StatementBuilder
+			.select("p")
+			.from("Person p")
+			.where(and(
+				eq("p.name", person.getName().toUpperCase(), CaseInsensitivity.LOWER_COLUMN),
+				contains("p.name", "CASE-", CaseInsensitivity.LOWER_COLUMN)))
+			.createQuery(entityManager, Person.class)
+			.getResultList()
+			.size() == 1, "Case-insensitive match failed");
+	}
+
+	@Test
+	public void testLikePatterns() {
+		Assert.isTrue(LikePatterns.getShape("ABC%", false) == LikePatterns.Shape.PREFIX, "Expected a prefix pattern");
+		Assert.isTrue(LikePatterns.getShape("%ABC", false) == LikePatterns.Shape.LEADING_WILDCARD, "Expected a leading wildcard");
+		Assert.isTrue(LikePatterns.getShape(LikePatterns.escape("50%_off"), true) == LikePatterns.Shape.EXACT, "Escaped wildcards should be literals");
+		Assert.isTrue(LikePatterns.getUpperBound("ABC").equals("ABD"), "Unexpected upper bound");
+		
+		Person person = entityManager.merge(Person.builder().name("Like_" + UUID.randomUUID()).build());
+		
+		try {
+			LikePatterns.setPrefixRangeRewrite(true);
+			LikePatterns.setLeadingWildcardPolicy(LikePatterns.LeadingWildcardPolicy.REJECT, Arrays.asList("Person"));
+			
+			SelectStatementBuilder builder = StatementBuilder
+				.select("p")
+				.from("Person p")
+				.where(startsWith("p.name", "Like_"));
+			
+			Assert.isTrue(builder.toString().contains("(p.name >= :$1_p_name_lo and p.name < :$2_p_name_hi)"), "Prefix pattern was not rewritten as a range");
+			Assert.isTrue(builder.createQuery(entityManager, Person.class).getResultList().stream().anyMatch(p -> p.getId().equals(person.getId())), "Range predicate did not match");
+			Assert.isTrue(contains("p.name", "e_").toString().endsWith("escape '!'"), "Escaped patterns should declare the escape character");
+			Assert.isTrue(LikePatterns.escape("50%!").equals("50!%!!"), "The escape character should escape itself");
+			
+			Person bang = entityManager.merge(Person.builder().name("Bang!_" + UUID.randomUUID()).build());
+			Assert.isTrue(StatementBuilder.select("p").from("Person p").where(startsWith("p.name", "Bang!_")).createQuery(entityManager, Person.class).getResultList().equals(List.of(bang)), "Escaped patterns should match the escape character literally");
+			Assert.isTrue(!like("p.name", "%ike").toString().contains("lower("), "Two argument like should stay case sensitive");
+			
+			Person mixedCase = entityManager.merge(Person.builder().name("RangeZ_" + UUID.randomUUID()).build());
+			
+			for (CaseInsensitivity caseInsensitivity : List.of(CaseInsensitivity.LOWER_BOTH, CaseInsensitivity.LOWER_COLUMN))
+				Assert.isTrue(StatementBuilder.select("p").from("Person p").where(startsWith("p.name", "rangeZ", caseInsensitivity))
+					.createQuery(entityManager, Person.class).getResultList().contains(mixedCase), "Case insensitive range should be bounded after lowering the prefix");
+			
+			Assert.isTrue(startsWith("p.name", "\uFFFF").toString().contains(" like "), "Prefixes without an upper bound should keep the like");
+			Assert.isTrue(Operator.endsWith("p.name", "ike", CaseInsensitivity.LOWER_COLUMN).toString().contains("lower(p.name) like"), "endsWith should honour the case insensitivity");
+			
+			Assertions.assertThrows(IllegalArgumentException.class, () -> StatementBuilder
+				.select("p")
+				.from("Person p")
+				.where(like("p.name", "%ike"))
+				.createQuery(entityManager, Person.class), "Leading wildcard on a large entity should be rejected");
+		} finally {
+			LikePatterns.setPrefixRangeRewrite(false);
+			LikePatterns.setLeadingWildcardPolicy(LikePatterns.LeadingWildcardPolicy.ALLOW, Arrays.asList());
+		}
+	}
+
+	@Test
+	public void testClaim() {
+		Stream
+			.generate(() -> Person.builder().name("job-" + UUID.randomUUID()).build())
+			.limit(5)
+			.forEach(entityManager::persist);
+		
+		SelectStatementBuilder pending = StatementBuilder
+			.select("p")
+			.from("Person p")
+			.where(and(like("p.name", "job-%"), isNull("p.nickName")))
+			.orderBy("p.id");
+		
+		TypedQuery<Person> query = pending.createClaimQuery(entityManager, Person.class, 2);
+		
+		Assert.isTrue(query.getLockMode() == LockModeType.PESSIMISTIC_WRITE && query.getMaxResults() == 2, "Claim query should lock a bounded batch");
+		Assert.isTrue(Integer.valueOf(-2).equals(query.getHints().get("jakarta.persistence.lock.timeout")), "Claim query should skip locked rows");
+		Assert.isTrue(Integer.valueOf(Integer.MAX_VALUE).equals(pending.copy().queryTimeout(Long.MAX_VALUE).getHints().get("jakarta.persistence.query.timeout")), "Long timeouts should be clamped");
+		
+		List<Person> first = pending.claim(entityManager, Person.class, 2, p -> p.setNickName("worker-1"));
+		List<Person> second = pending.claim(entityManager, Person.class, 5, p -> p.setNickName("worker-2"));
+		
+		Assert.isTrue(first.size() == 2 && second.size() == 3, "Marked rows should not be claimed again");
+		Assert.isTrue(second.stream().noneMatch(p -> first.stream().anyMatch(f -> f.getId().equals(p.getId()))), "Rows were claimed twice");
+		Assert.isTrue(pending.getLockMode() == null && pending.getMaxResults() == null, "Claiming should not modify the builder");
+	}
+
+	@Test
+	public void testDeadline() {
+		SelectStatementBuilder builder = StatementBuilder
+			.select("p")
+			.from("Person p")
+			.queryTimeout(60000L);
+		
+		try (Deadline deadline = Deadline.after(Duration.ofSeconds(5))) {
+			Object timeout = builder.createQuery(entityManager, Person.class).getHints().get("jakarta.persistence.query.timeout");
+			
+			Assert.isTrue(timeout instanceof Integer && (Integer) timeout > 0 && (Integer) timeout <= 5000, "Query timeout should be the remaining budget");
+			
+			Deadline.call(Duration.ofMinutes(1), () -> {
+				Assert.isTrue(Deadline.current().get().getRemaining().compareTo(Duration.ofSeconds(5)) <= 0, "A nested deadline should not extend the enclosing one");
+				return null;
+			});
+		}
+		
+		try (Deadline deadline = Deadline.after(Duration.ofMillis(200))) {
+			Object timeout = builder.createQuery(entityManager, Person.class).getHints().get("jakarta.persistence.query.timeout");
+			
+			Assert.isTrue(Integer.valueOf(1000).equals(timeout), "A budget under a second should round up to one, not to no timeout: " + timeout);
+		}
+		
+		Assertions.assertThrows(QueryTimeoutException.class, () -> Deadline.call(Duration.ZERO, () -> builder.createQuery(entityManager, Person.class)), "Expired deadlines should fail fast");
+		
+		Thread.currentThread().interrupt();
+		
+		try {
+			Assertions.assertThrows(QueryTimeoutException.class, () -> Deadline.call(Duration.ofSeconds(5), () -> builder.createQuery(entityManager, Person.class)), "Interrupted threads should not execute queries");
+		} finally {
+			Thread.interrupted();
+		}
+		
+		Assert.isTrue(Deadline.current().isEmpty(), "Deadline scope was not closed");
+	}
+
+	@Test
+	public void testMultiGet() {
+		Person managed = entityManager.merge(Person.builder().name(UUID.randomUUID().toString()).build());
+		Person stored = entityManager.merge(Person.builder().name(UUID.randomUUID().toString()).build());
+		entityManager.flush();
+		entityManager.detach(stored);
+
+		List<Person> people = MultiGet.of(Person.class).getResultList(entityManager, stored.getId(), -1L, managed.getId(), stored.getId());
+
+		Assert.isTrue(people.size() == 4, "Expected one entry per id");
+		Assert.isTrue(people.get(0).getName().equals(stored.getName()), "Missing entity should have been queried");
+		Assert.isTrue(people.get(1) == null, "Unknown id should map to null");
+		Assert.isTrue(people.get(2) == managed, "Managed entity should come from the persistence context");
+		Assert.isTrue(people.get(3) == people.get(0), "Repeated ids should resolve to the same instance");
+		Assert.isTrue(MultiGet.getPaddedChunk(Arrays.asList(1, 2, 3), 256).size() == 4, "In list should be padded to a power of two");
+		Assert.isTrue(MultiGet.getPaddedChunk(Arrays.asList(1, 2, 3, 4, 5), 6).size() == 6, "Padding should not exceed the chunk size");
+		Assert.isTrue(entityManager.find(Person.class, -1L) == null, "Unknown ids should leave no proxy behind in the persistence context");
+		Assert.isTrue(MultiGet.of(Person.class).getResultList(entityManager, Math.toIntExact(stored.getId())).get(0) == people.get(0), "Integer ids should find entities with Long ids");
+		Assertions.assertThrows(IllegalArgumentException.class, () -> MultiGet.of(Person.class).getResultList(entityManager, "1"), "Ids of an unrelated type should be rejected");
+		Assertions.assertThrows(IllegalArgumentException.class, () -> MultiGet.of(Person.class).getResultList(entityManager, 1.5), "Fractional ids should be rejected");
+	}
+
+	@Test
+	public void testFreeze() {
+		SelectStatementBuilder base = StatementBuilder
+			.select("p")
+			.from("Person p")
+			.orderBy("p.name")
+			.freeze();
+
+		String jpql = base.toString();
+		SelectStatementBuilder variant = base.where(eq("p.active", true)).maxResults(10);
+
+		Assert.isTrue(base.isFrozen() && !variant.isFrozen(), "Derived builders should be mutable");
+		Assert.isTrue(base.toString() == jpql && base.getWhere() == null && base.getMaxResults() == null, "Frozen builder should not change");
+		Assert.isTrue(variant.getFrom() == base.getFrom() && variant.getOrderBy() == base.getOrderBy(), "Unchanged collections should be shared");
+		Assert.isTrue(variant.orderBy("p.id").getOrderBy().size() == 2 && base.getOrderBy().size() == 1, "Changed collections should be copied");
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> base.getSelect().add("p.id"), "Frozen collections should be unmodifiable");
+
+		variant.createQuery(entityManager, Person.class).getResultList();
+
+		Person person = entityManager.merge(Person.builder().name("Frozen" + UUID.randomUUID()).build());
+		SelectStatementBuilder frozen = StatementBuilder
+			.select("p")
+			.from("Person p")
+			.where(startsWith("p.name", "FROZEN", true))
+			.freeze();
+
+		try {
+			LikePatterns.setPrefixRangeRewrite(true);
+			CaseInsensitivity.setDefault(CaseInsensitivity.LOWER_COLUMN);
+
+			Assert.isTrue(frozen.toString().contains(" like ") && frozen.getNamedParameters().keySet().stream().noneMatch(name -> name.endsWith("_lo")),
+				"Frozen builder should bind with the settings it was rendered with");
+			Assert.isTrue(frozen.getNamedParameters().values().stream().anyMatch(value -> value.toString().startsWith("FROZEN")), "Frozen builder should keep its case insensitivity");
+			Assert.isTrue(frozen.createQuery(entityManager, Person.class).getResultList().contains(person), "Frozen builder should still match after the settings change");
+		} finally {
+			LikePatterns.setPrefixRangeRewrite(false);
+			CaseInsensitivity.setDefault(CaseInsensitivity.LOWER_BOTH);
+		}
+	}
+
+	@Test
+	public void testBinaryCodec() {
+		LocalDateTime createdOn = LocalDateTime.now();
+		SelectStatementBuilder builder = StatementBuilder
+			.select("p")
+			.from("Person p")
+			.leftJoin("p.phones ph", eq("ph.phoneType", PhoneType.MOBILE))
+			.where(and(
+				eq("p.active", true),
+				contains("p.name", "A_", CaseInsensitivity.LOWER_COLUMN),
+				gt("p.createdOn", createdOn),
+				in("p.id", Arrays.asList(1L, 2L, 3L)),
+				exists(StatementBuilder.select("c").from("Call c").where(isNull("c.duration")))))
+			.orderBy("p.name")
+			.maxResults(5);
+
+		byte[] encoded = BinaryCodec.encode(builder);
+		Assertions.assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decodeStatement(ByteBuffer.wrap(encoded)), "Types that were not allowed should be rejected");
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(encoded.length).put(encoded).flip();
+		StatementBuilder<?> decoded = BinaryCodec.decodeStatement(buffer, BinaryCodec.allowing(PhoneType.class));
+
+		Assert.isTrue(!buffer.hasRemaining(), "Decoding should consume the encoded form");
+		Assert.isTrue(decoded.toString().equals(builder.toString()), "Decoded statement should render identically");
+		Assert.isTrue(decoded.getNamedParameters().values().toString().equals(builder.getNamedParameters().values().toString()), "Decoded parameters should match");
+		Assert.isTrue(decoded.getMaxResults() == 5, "Paging should be encoded");
+		Assert.isTrue(BinaryCodec.hash(decoded) == BinaryCodec.hash(builder), "Hash should not depend on parameter prefixes");
+		Assert.isTrue(BinaryCodec.hash(eq("p.name", "a")) != BinaryCodec.hash(eq("p.name", "b")), "Hash should cover values");
+
+		Map<String, Object> hints = new LinkedHashMap<>(), reversed = new LinkedHashMap<>();
+		hints.put("org.hibernate.comment", "x");
+		hints.put("jakarta.persistence.query.timeout", 1000);
+		reversed.put("jakarta.persistence.query.timeout", 1000);
+		reversed.put("org.hibernate.comment", "x");
+		// a frozen builder's derived hints are a LinkedHashMap that keeps insertion order, a fresh builder's a HashMap
+		for (Map<String, Object> ordered : List.of(hints, reversed))
+			Assert.isTrue(Arrays.equals(BinaryCodec.encode(builder.copy().hints(hints)), BinaryCodec.encode(builder.copy().freeze().hints(ordered))), "Hint order should not change the encoding");
+
+		Predicate predicate = BinaryCodec.decodePredicate(ByteBuffer.wrap(BinaryCodec.encode(like("p.name", "%x%", true))));
+		Assert.isTrue(predicate.toString().startsWith("lower(p.name) like lower(:"), "Decoded predicate should render identically");
+		Assertions.assertThrows(IllegalArgumentException.class, () -> BinaryCodec.encode(eq("p.name", new Object())), "Unsupported values should be rejected");
+	}
+
+	@Test
+	public void testFilterParser() {
+		FilterParser parser = new FilterParser()
+			.allow("name", "p.name", String.class)
+			.allow("createdOn", "p.createdOn", LocalDateTime.class)
+			.allow("id", "p.id", Long.class)
+			.allow("active", "p.active", Boolean.class)
+			.maxInSize(3)
+			.maxDepth(3);
+
+		Predicate predicate = parser.parse("name~'A%' and createdOn>2024-01-01 and (id in (1,2,3) or active = true) and not name is null");
+		SelectStatementBuilder builder = StatementBuilder.select("p").from("Person p").where(predicate);
+
+		Assert.isTrue(builder.toString().endsWith("where (p.name like :$1_p_name and p.createdOn > :$2_p_createdOn and (p.id in (:$3_p_id) or p.active = :$4_p_active) and not (p.name is null))"), "Unexpected statement: " + builder);
+		Assert.isTrue(List.copyOf(builder.getNamedParameters().values()).equals(List.of("A%", LocalDate.of(2024, 1, 1).atStartOfDay(), List.of(1L, 2L, 3L), true)), "Unexpected parameters");
+		Assert.isTrue(parser.parse("  ") == null, "Blank filters should parse to null");
+
+		builder.createQuery(entityManager, Person.class).getResultList();
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> parser.parse("nickName = 'x'"), "Unknown properties should be rejected");
+		Assertions.assertThrows(IllegalArgumentException.class, () -> parser.parse("id in (1,2,3,4)"), "In lists should be limited");
+		Assertions.assertThrows(IllegalArgumentException.class, () -> parser.parse("((((id = 1))))"), "Nesting should be limited");
+		Assertions.assertThrows(IllegalArgumentException.class, () -> parser.parse("id = abc"), "Values should be coerced to the property type");
+		Assertions.assertThrows(IllegalArgumentException.class, () -> parser.parse("name = 'x"), "Unterminated strings should be rejected");
+	}
+
+	@Test
+	public void testPlanCacheAnalyzer() {
+		List<String> warnings = new ArrayList<>();
+		Consumer<String> warningListener = PlanCacheAnalyzer.getWarningListener();
+		PlanCacheAnalyzer.setWarningListener(warnings::add);
+		PlanCacheAnalyzer.setWarningThreshold(3);
+		PlanCacheAnalyzer.setEnabled(true);
+
+		try {
+			for (int size = 1; size <= 3; size++)
+				StatementBuilder.select("p").from("Person p").where(expr("size(p.phones) > " + size)).createQuery(entityManager, Person.class);
+
+			for (int size = 1; size <= 3; size++)
+				StatementBuilder.select("p").from("Person p").where(in("p.id", Stream.iterate(1L, i -> i + 1).limit(size).collect(toList()))).createQuery(entityManager, Person.class);
+
+			Map<String, PlanCacheAnalyzer.Statistics> statistics = new HashMap<>();
+			PlanCacheAnalyzer.getStatistics().forEach(s -> statistics.put(s.getKey(), s));
+
+			PlanCacheAnalyzer.Statistics size = statistics.get("select p\nfrom Person p\nwhere size(p.phones) > ?");
+			Assert.isTrue(size != null && size.isInlinedLiterals() && size.getDistinctShapes() == 3, "Inlined literals should be detected");
+			Assert.isTrue(statistics.values().stream().anyMatch(s -> !s.isInlinedLiterals() && s.getDistinctShapes() == 3), "In list sizes should count as distinct shapes");
+			Assert.isTrue(warnings.size() == 3, "Expected one literal warning and two cardinality warnings: " + warnings);
+		} finally {
+			PlanCacheAnalyzer.setEnabled(false);
+			PlanCacheAnalyzer.setWarningThreshold(100);
+			PlanCacheAnalyzer.setWarningListener(warningListener);
+			PlanCacheAnalyzer.reset();
+		}
+	}
+
+	@Test
+	public void testAutoParameterization() {
+		Assert.isTrue(StatementBuilder.select("p").from("Person p").where(Operator.collectionSize("p.phones", ">", 5)).toString().endsWith("where size(p.phones) > :$1_p_phones_size"), "Collection size should be bound");
+
+		AutoParameterization.setEnabled(true);
+
+		try {
+			SelectStatementBuilder
+				builder1 = StatementBuilder.select("p").from("Person p").where(and(eq("p.active", true), expr("p.name <> 'it''s' and p.createdOn > {ts '2024-01-01 10:00:00'} and p.version >= 2 and p.name not like 'a\\_%' escape '\\'"))),
+				builder2 = StatementBuilder.select("p").from("Person p").where(and(eq("p.active", true), expr("p.name <> 'other' and p.createdOn > {ts '2023-06-30 00:00:00'} and p.version >= 7 and p.name not like 'b\\_%' escape '\\'")));
+
+			Assert.isTrue(builder1.toString().equals(builder2.toString()), "Expressions differing in literals should render the same text");
+			Assert.isTrue(builder1.toString().endsWith("escape '\\')"), "Escape characters should stay literal: " + builder1);
+			Assert.isTrue(List.copyOf(builder1.getNamedParameters().values()).equals(List.of(true, "it's", LocalDateTime.of(2024, 1, 1, 10, 0), 2, "a\\_%")), "Unexpected parameters: " + builder1.getNamedParameters());
+			Assert.isTrue(builder1.getNamedParameters().keySet().stream().allMatch(builder1.toString()::contains), "Lifted parameters should be sequenced with the rest");
+
+			builder1.createQuery(entityManager, Person.class).getResultList();
+			
+			// positions that only take a literal keep it
+			SelectStatementBuilder cast = StatementBuilder.select("p").from("Person p").where(expr("cast(p.version as BigDecimal(10,2)) >= 1.5"));
+			Assert.isTrue(cast.toString().contains("BigDecimal(10,2)") && List.copyOf(cast.getNamedParameters().values()).equals(List.of(1.5)), "Cast type arguments should stay literal: " + cast);
+			cast.createQuery(entityManager, Person.class).getResultList();
+			
+			SelectStatementBuilder trim = StatementBuilder.select("p").from("Person p").where(expr("trim(leading 'x' from p.name) <> 'y' and trim('z' from p.name) <> 'y'"));
+			Assert.isTrue(trim.toString().contains("trim(leading 'x' from p.name)") && trim.toString().contains("trim('z' from p.name)"), "Trim characters should stay literal: " + trim);
+			trim.createQuery(entityManager, Person.class).getResultList();
+			
+			// a string literal compared to an enum path is bound as the enum constant
+			Phone phone = Phone.builder().number(UUID.randomUUID().toString()).type(PhoneType.MOBILE).build();
+			entityManager.persist(phone);
+			Assert.isTrue(StatementBuilder.select("ph").from("Phone ph").where(and(eq("ph.number", phone.getNumber()), expr("ph.type = 'MOBILE'")))
+				.createQuery(entityManager, Phone.class).getResultList().equals(List.of(phone)), "Enum literals should match");
+		} finally {
+			AutoParameterization.setEnabled(false);
+		}
+	}
+
+	@Test
+	public void testDirectBinding() {
+		SelectStatementBuilder builder = StatementBuilder
+			.select("p")
+			.from("Person p")
+			.leftJoin("p.phones ph", eq("ph.type", PhoneType.MOBILE))
+			.where(or(Stream.iterate(0, i -> i + 1)
+				.limit(200)
+				.map(i -> and(eq("p.name", "name" + i), gt("p.version", i), like("p.nickName", "%" + i, true)))
+				.collect(toList())));
+
+		Map<String, Object> bound = new LinkedHashMap<>();
+		builder.bindParameters(bound::put);
+
+		Assert.isTrue(bound.size() == 601, "Expected every parameter to be bound");
+		Assert.isTrue(bound.equals(builder.getNamedParameters()) && List.copyOf(bound.keySet()).equals(List.copyOf(builder.getNamedParameters().keySet())), "Bound parameters should match getNamedParameters()");
+		Assert.isTrue(bound.keySet().stream().allMatch(builder.toString()::contains), "Bound names should match the statement text");
+
+		builder.createQuery(entityManager, Person.class).getResultList();
+	}
+
+	@Test
+	public void testFacetCounts() {
+		String prefix = UUID.randomUUID().toString();
+
+		for (int i = 0; i < 5; i++)
+			entityManager.persist(withPhones(Person.builder().name(prefix + i).nickName(i % 2 == 0 ? "even" : null).build(), prefix + i + "-", 2));
+
+		SelectStatementBuilder builder = StatementBuilder
+			.select("p")
+			.from("Person p")
+			.leftJoin("fetch p.phones")
+			.where(like("p.name", prefix + "%"))
+			.orderBy("p.name")
+			.maxResults(2)
+			.loadGraph(entityManager.createEntityGraph(Person.class));
+
+		Map<String, Predicate> facets = new LinkedHashMap<>();
+		facets.put("even", eq("p.nickName", "even"));
+		facets.put("unnamed", isNull("p.nickName"));
+		facets.put("first", in("p.name", List.of(prefix + 0, prefix + 1)));
+		facets.put("none", eq("p.name", "none"));
+
+		String jpql = builder.getFacetStatement(facets).toString();
+		Assert.isTrue(jpql.startsWith("select sum(case when p.nickName = :$1_p_nickName then 1 else 0 end), sum(case when p.nickName is null then 1 else 0 end)"), "Facets should be counted in the select clause: " + jpql);
+		Assert.isTrue(!jpql.contains("fetch") && !jpql.contains("order by"), "Facets should not fetch or order: " + jpql);
+		Assert.isTrue(!builder.getFacetStatement(facets).getHints().containsKey("jakarta.persistence.loadgraph"), "Facets should not carry the entity graph");
+
+		Map<String, Long> counts = builder.getFacetCounts(entityManager, facets);
+		Assert.isTrue(counts.equals(Map.of("even", 3L, "unnamed", 2L, "first", 2L, "none", 0L)), "Unexpected facet counts: " + counts);
+		Assert.isTrue(List.copyOf(counts.keySet()).equals(List.copyOf(facets.keySet())), "Counts should follow the facet order");
+
+		// an aliased fetch join the facets refer to is kept, and each person is still counted once
+		SelectStatementBuilder aliased = StatementBuilder
+			.select("p")
+			.from("Person p")
+			.leftJoin("fetch p.phones ph")
+			.where(like("p.name", prefix + "%"));
+
+		Map<String, Predicate> phoneFacets = new LinkedHashMap<>();
+		phoneFacets.put("even", eq("p.nickName", "even"));
+		phoneFacets.put("first", like("ph.number", prefix + "0-%"));
+
+		jpql = aliased.getFacetStatement(phoneFacets).toString();
+		Assert.isTrue(jpql.contains("left join p.phones ph") && jpql.contains("count(distinct case when"), "Referenced fetch joins should be kept and counted distinct: " + jpql);
+
+		counts = aliased.getFacetCounts(entityManager, phoneFacets);
+		Assert.isTrue(counts.equals(Map.of("even", 3L, "first", 1L)), "Unexpected facet counts over a to-many join: " + counts);
+	}
+
+	private static Person withPhones(Person person, String prefix, int count) {
+		for (int i = 0; i < count; i++) {
+			Phone phone = Phone.builder().number(prefix + i).person(person).build();
+			person.getPhones().add(phone);
+		}
+
+		return person;
+	}
+
+	@Test
+	public void testExistsAndCountUpTo() {
+		String prefix = UUID.randomUUID().toString();
+
+		for (int i = 0; i < 5; i++)
+			entityManager.persist(withPhones(Person.builder().name(prefix + i).build(), prefix + i + "-", 3));
+
+		SelectStatementBuilder builder = StatementBuilder
+			.select("p")
+			.from("Person p")
+			.leftJoin("fetch p.phones")
+			.where(like("p.name", prefix + "%"))
+			.orderBy("p.name")
+			.fetchGraph(entityManager.createEntityGraph(Person.class));
+
+		String jpql = builder.getProbeStatement(3).toString();
+		Assert.isTrue(jpql.startsWith("select 1\n") && !jpql.contains("fetch") && !jpql.contains("order by"), "Probe should select a constant without fetching or ordering: " + jpql);
+		Assert.isTrue(builder.getProbeStatement(3).getMaxResults() == 3, "Probe should be limited");
+		Assert.isTrue(!builder.getProbeStatement(3).getHints().containsKey("jakarta.persistence.fetchgraph"), "Probe should not carry the entity graph");
+		Assert.isTrue(StatementBuilder.select("distinct p.name").from("Person p").getProbeStatement(1).toString().startsWith("select distinct p.name"), "Distinct selects should be kept");
+
+		Assert.isTrue(builder.exists(entityManager), "Expected matching rows");
+		Assert.isTrue(!builder.copy().where(eq("p.name", "none")).exists(entityManager), "Expected no matching rows");
+		Assert.isTrue(builder.countUpTo(entityManager, 3) == 3, "Count should stop at the limit");
+		Assert.isTrue(builder.countUpTo(entityManager, 10) == 5, "Count should include every matching row below the limit");
+		Assertions.assertThrows(IllegalArgumentException.class, () -> builder.countUpTo(entityManager, 0));
+
+		// joins that can repeat a person are kept, so the probe selects distinct people
+		SelectStatementBuilder joined = StatementBuilder
+			.select("p")
+			.from("Person p")
+			.associate("join fetch p.phones ph")
+			.where(like("p.name", prefix + "%"));
+
+		jpql = joined.getProbeStatement(10).toString();
+		Assert.isTrue(jpql.startsWith("select distinct p\n") && jpql.contains("join p.phones ph"), "Probe should select distinct roots over kept joins: " + jpql);
+		Assert.isTrue(joined.countUpTo(entityManager, 10) == 5, "Count should not repeat a person per phone");
+		Assert.isTrue(joined.copy().where(like("ph.number", prefix + "1-%")).countUpTo(entityManager, 10) == 1, "Count should not repeat a person per matching phone");
+	}
+
+	@Test
+	public void testUpdate() {
+		Person p = entityManager.merge(Person.builder()
+			.name(UUID.randomUUID().toString())
+			.build());
+		
+		String newName = UUID.randomUUID().toString();
+		
+		StatementBuilder
+			.update("Person p")
+			.set("p.name", newName)
+			.where(eq("p.name", p.getName()))
+			.createQuery(entityManager)
+			.executeUpdate();
+		
+		entityManager.refresh(p);
+		
+		Assert.isTrue(p.getName().equals(newName), "Person.name was not updated as expected");
+	}
+	
+	@Test
+	public void testUpdateByKey() {
+		List<Person> persons = Stream
+			.generate(() -> entityManager.merge(Person.builder().name(UUID.randomUUID().toString()).build()))
+			.limit(5)
+			.collect(toList());
+		
+		Map<Long, Map<String, Object>> rows = new LinkedHashMap<>();
+		persons.forEach(p -> rows.put(p.getId(), new HashMap<>(Map.of("p.nickName", "nick-" + p.getId()))));
+		rows.get(persons.get(0).getId()).put("p.active", true);
+		
+		UpdateStatementBuilder builder = StatementBuilder
+			.update("Person p")
+			.setByKey("p.id", rows);
+		
+		Assert.isTrue(builder.split(2).size() == 3, "Keyed rows were not split into bounded chunks");
+		Assert.isTrue(builder.executeUpdate(entityManager, 2) == 5, "Keyed update did not update every row");
+		Assertions.assertThrows(IllegalArgumentException.class, () -> builder.executeUpdate(entityManager, 0));
+		
+		persons.forEach(entityManager::refresh);
+		
+		Assert.isTrue(persons.stream().allMatch(p -> p.getNickName().equals("nick-" + p.getId())), "Person.nickName was not updated per row");
+		Assert.isTrue(Boolean.TRUE.equals(persons.get(0).getActive()) && persons.get(1).getActive() == null, "Rows without a value should keep their current value");
+	}
+	
+	@Test
+	public void testBatch() {
+		List<Person> persons = Stream
+			.generate(() -> entityManager.merge(Person.builder().name(UUID.randomUUID().toString()).build()))
+			.limit(3)
+			.collect(toList());
+		
+		List<StatementBuilder<?>> statements = Arrays.asList(
+			StatementBuilder.update("Person p").set("p.nickName", "first").where(eq("p.name", persons.get(0).getName())),
+			StatementBuilder.delete().from("Person p").where(eq("p.name", persons.get(2).getName())),
+			StatementBuilder.update("Person p").set("p.nickName", "second").where(eq("p.name", persons.get(1).getName())),
+			StatementBuilder.update("Person p").set("p.nickName", "none").where(eq("p.name", "")));
+		
+		Assert.isTrue(statements.get(0).toString().equals(statements.get(2).toString()), "Equivalent update statements should render the same JPQL");
+		Assert.isTrue(BatchExecutor.group(statements, true).size() == 3, "Unexpected ordered grouping");
+		Assert.isTrue(BatchExecutor.group(statements, false).size() == 2, "Unexpected unordered grouping");
+		Assert.isTrue(BatchExecutor.group(List.of(statements.get(0), StatementBuilder.update("Person p").set("p.nickName", "second").where(eq("p.name", persons.get(1).getName())).queryTimeout(1000L)), false).size() == 2, "Statements with different hints should not share a query");
+		Assert.isTrue(Arrays.equals(BatchExecutor.execute(entityManager, statements, false), new int[] {1, 1, 1, 0}), "Unexpected per-statement counts");
+		
+		entityManager.refresh(persons.get(1));
+		
+		Assert.isTrue(persons.get(1).getNickName().equals("second"), "Person.nickName was not updated");
+	}
+	
+	@Test
+	public void testDelete() {
+		Person p = entityManager.merge(Person.builder()
+			.name(UUID.randomUUID().toString())
+			.build());
+		
+		StatementBuilder
+			.delete()
+			.from("Person p")
+			.where(eq("p.name", p.getName()))
+			.createQuery(entityManager)
+			.executeUpdate();
+		
+		Assert.isTrue(StatementBuilder
+			.select()
+			.from("Person")
+			.where(eq("id", p.getId()))
+			.createQuery(entityManager, Person.class)
+			.getResultList().isEmpty(), "Person was not deleted as expected");
+	}
+}
@@ -0,0 +1,19 @@
+package com.github.simplejpql.domain;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+// a plain class whose constructor takes its fields in a different order than they are declared
+@Getter
+@EqualsAndHashCode
+public class PersonLabel {
+
+	private final String name;
+
+	private final Long id;
+
+	public PersonLabel(Long id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+}
@@ -0,0 +1,4 @@
+package com.github.simplejpql.domain;
+
+public record PersonSummary(Long id, String name, int phoneCount) {
+}